@@ -0,0 +1,250 @@
+package com.cisco.wccai.grpc.benchmark;
+
+import com.cisco.wcc.ccai.media.v1.ByovaCommon.ListVARequest;
+import com.cisco.wcc.ccai.media.v1.ByovaCommon.ListVAResponse;
+import com.cisco.wcc.ccai.media.v1.VoiceVirtualAgentGrpc;
+import com.cisco.wccai.grpc.server.ConversationAudioForkServiceImpl;
+import com.cisco.wccai.grpc.server.GrpcServer;
+import com.cisco.wccai.grpc.server.ServerExecutors;
+import com.cisco.wccai.grpc.server.ServerTransportConfig;
+import com.cisco.wccai.grpc.server.fork.ForkPolicies;
+import com.cisco.wccai.grpc.server.fork.RoleAudioBuffers;
+import com.cisco.wccai.grpc.server.interceptors.AsyncAuthorizationServerInterceptor;
+import com.cisco.wccai.grpc.server.interceptors.AuthorizationServerInterceptor;
+import com.cisco.wccai.grpc.server.interceptors.ConcurrencyLimitServerInterceptor;
+import com.cisco.wccai.grpc.server.interceptors.JWTAuthorizationHandler;
+import com.cisco.wccai.grpc.server.interceptors.JwksKeyProvider;
+import com.cisco.wccai.grpc.server.interceptors.TokenAuthorizer;
+import com.cisco.wccai.grpc.server.interceptors.VerifiedTokenCache;
+import com.nimbusds.jose.jwk.RSAKey;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures authenticated calls per second and call setup latency through the simulator's full main-server
+ * interceptor chain ({@link GrpcServer#addMainServices}), with a {@link StubIdentityBroker} as the token issuer.
+ *
+ * Each call is a unary ListVirtualAgents with its own authorization header, so its latency is essentially the cost
+ * of getting the call authorized and started. Up to {@code --concurrency} calls are outstanding at once.
+ * Scenarios:
+ * <ul>
+ *   <li>{@code cached}: every call reuses one token, served from the verified-token cache</li>
+ *   <li>{@code unique}: every call has a new token, so each is fully validated against the cached keys</li>
+ *   <li>{@code rotation}: like {@code unique}, but halfway through the broker rotates its signing key and the
+ *   remaining tokens carry the new kid, which forces a key refresh</li>
+ *   <li>{@code throttled}: like {@code unique}, but the keys have expired and the broker answers every refresh
+ *   with 429 and Retry-After for the whole run</li>
+ * </ul>
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec@harness -Dharness=AuthThroughputBenchmark \
+ *     -Dharness.args="--scenarios cached,unique,rotation,throttled --auth-mode ASYNC"
+ * </pre>
+ *
+ * Options: --scenarios, --auth-mode (ASYNC or SYNC, default ASYNC), --calls (measured per scenario, default 2000),
+ * --warmup-calls (default 500), --concurrency (default 64), --channels (default 4), --jwks-latency-ms (default 50).
+ */
+public final class AuthThroughputBenchmark {
+
+    private static final Metadata.Key<String> AUTHORIZATION = Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Duration TOKEN_TIME_TO_LIVE = Duration.ofHours(1);
+    // Lets a token with the rotated kid trigger a refresh right away instead of after the production default of 30 s
+    private static final long UNKNOWN_KID_REFRESH_MS = 1000;
+
+    private AuthThroughputBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configurator.setRootLevel(Level.WARN);
+        Configurator.setLevel("com.cisco.wccai", Level.WARN);
+
+        Map<String, String> options = parseOptions(args);
+        String authMode = options.getOrDefault("auth-mode", "ASYNC").toUpperCase();
+        int calls = Integer.parseInt(options.getOrDefault("calls", "2000"));
+        int warmupCalls = Integer.parseInt(options.getOrDefault("warmup-calls", "500"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        int channelCount = Integer.parseInt(options.getOrDefault("channels", "4"));
+        long jwksLatencyMillis = Long.parseLong(options.getOrDefault("jwks-latency-ms", "50"));
+
+        // One throwaway round first, so the first measured scenario does not pay for class loading and JIT
+        runScenario("unique", authMode, warmupCalls, warmupCalls, concurrency, channelCount, jwksLatencyMillis);
+        List<String> rows = new ArrayList<>();
+        for (String scenario : options.getOrDefault("scenarios", "cached,unique,rotation,throttled").split(",")) {
+            rows.add(runScenario(scenario.trim(), authMode, calls, warmupCalls, concurrency, channelCount, jwksLatencyMillis));
+        }
+        System.out.println();
+        System.out.printf("%-10s %-6s %7s %7s %10s %9s %9s %9s %12s %9s%n",
+                "scenario", "mode", "calls", "failed", "calls/s", "p50(ms)", "p99(ms)", "max(ms)", "jwksRequests", "jwks429");
+        rows.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    private static String runScenario(String scenario, String authMode, int calls, int warmupCalls, int concurrency,
+                                      int channelCount, long jwksLatencyMillis) throws Exception {
+        String datasourceUrl = JWTAuthorizationHandler.getDefaultDatasourceUrl();
+        StubIdentityBroker broker = StubIdentityBroker.start(0, datasourceUrl);
+        broker.setLatencyMillis(jwksLatencyMillis);
+        boolean throttled = "throttled".equals(scenario);
+        if (throttled) {
+            broker.setMaxAgeSeconds(1);
+        }
+
+        // A fresh key cache, token cache and interceptor per scenario, pointed at the stub broker
+        JwksKeyProvider keyProvider = new JwksKeyProvider(0.8, TimeUnit.HOURS.toMillis(24), 5000, UNKNOWN_KID_REFRESH_MS);
+        JWTAuthorizationHandler handler = new JWTAuthorizationHandler(List.of(broker.getIssuer()), StubIdentityBroker.JWKS_PATH,
+                datasourceUrl, keyProvider);
+        TokenAuthorizer tokenAuthorizer = new TokenAuthorizer(new VerifiedTokenCache(), handler);
+        ServerInterceptor authorizationInterceptor = "SYNC".equals(authMode)
+                ? new AuthorizationServerInterceptor(tokenAuthorizer)
+                : new AsyncAuthorizationServerInterceptor(tokenAuthorizer);
+
+        ServerExecutors serverExecutors = ServerExecutors.fromSettings();
+        ServerTransportConfig transportConfig = ServerTransportConfig.fromSettings();
+        NettyServerBuilder serverBuilder = transportConfig.newServerBuilder(0);
+        serverExecutors.apply(serverBuilder, "SYNC".equals(authMode));
+        // Only ListVirtualAgents is called, so the fork service stores nothing and never needs an uploader
+        ConversationAudioForkServiceImpl forkService = new ConversationAudioForkServiceImpl(null,
+                RoleAudioBuffers.of(RoleAudioBuffers.BufferMode.MEMORY, Path.of(System.getProperty("java.io.tmpdir")), 65536),
+                ForkPolicies.fromSettings());
+        Server server = GrpcServer.addMainServices(serverBuilder, authorizationInterceptor, new ConcurrencyLimitServerInterceptor(),
+                        forkService)
+                .build()
+                .start();
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (int i = 0; i < channelCount; i++) {
+            channels.add(NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build());
+        }
+
+        // Tokens are minted up front: signing costs far more than verifying and would otherwise bound the client
+        String[] warmupTokens = mintTokens(broker, scenario, warmupCalls, null);
+        RSAKey rotatedKey = TokenMinter.newSigningKey("stub-key-rotated");
+        String[] tokens = mintTokens(broker, scenario, calls, "rotation".equals(scenario) ? rotatedKey : null);
+
+        runCalls(channels, warmupTokens, concurrency, new ConcurrentHistogram(3), new EnumMap<>(Status.Code.class), -1, null);
+        Runnable midRun = null;
+        if ("rotation".equals(scenario)) {
+            midRun = () -> broker.rotateTo(rotatedKey, true);
+        } else if (throttled) {
+            // Let the keys fetched during warmup expire, then refuse every refresh for longer than the run
+            Thread.sleep(1200);
+            broker.throttleFor(Duration.ofMinutes(10), 1);
+        }
+        int jwksRequestsBefore = broker.getRequests();
+
+        Histogram latencyMicros = new ConcurrentHistogram(3);
+        Map<Status.Code, Integer> failures = new EnumMap<>(Status.Code.class);
+        long started = System.nanoTime();
+        runCalls(channels, tokens, concurrency, latencyMicros, failures, calls / 2, midRun);
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        int failed = failures.values().stream().mapToInt(Integer::intValue).sum();
+        if (failed > 0) {
+            System.out.println(scenario + " failures by status: " + failures);
+        }
+        String row = String.format("%-10s %-6s %7d %7d %10.0f %9.2f %9.2f %9.2f %12d %9d",
+                scenario, authMode, calls, failed, calls / seconds,
+                latencyMicros.getValueAtPercentile(50) / 1000.0, latencyMicros.getValueAtPercentile(99) / 1000.0,
+                latencyMicros.getMaxValue() / 1000.0, broker.getRequests() - jwksRequestsBefore, broker.getThrottledRequests());
+
+        channels.forEach(ManagedChannel::shutdownNow);
+        server.shutdownNow();
+        server.awaitTermination(5, TimeUnit.SECONDS);
+        transportConfig.shutdown();
+        serverExecutors.shutdown();
+        broker.stop();
+        return row;
+    }
+
+    private static String[] mintTokens(StubIdentityBroker broker, String scenario, int count, RSAKey secondHalfKey) {
+        String[] tokens = new String[count];
+        if ("cached".equals(scenario)) {
+            Arrays.fill(tokens, broker.mintToken(TOKEN_TIME_TO_LIVE));
+            return tokens;
+        }
+        for (int i = 0; i < count; i++) {
+            tokens[i] = secondHalfKey != null && i >= count / 2
+                    ? broker.getTokenMinter().mint(secondHalfKey, TOKEN_TIME_TO_LIVE)
+                    : broker.mintToken(TOKEN_TIME_TO_LIVE);
+        }
+        return tokens;
+    }
+
+    // Issues one call per token with at most `concurrency` outstanding; runs midRun just before call number midRunAt.
+    private static void runCalls(List<ManagedChannel> channels, String[] tokens, int concurrency, Histogram latencyMicros,
+                                 Map<Status.Code, Integer> failures, int midRunAt, Runnable midRun) throws InterruptedException {
+        Semaphore permits = new Semaphore(concurrency);
+        CountDownLatch finished = new CountDownLatch(tokens.length);
+        ListVARequest request = ListVARequest.newBuilder().build();
+        for (int i = 0; i < tokens.length; i++) {
+            if (i == midRunAt && midRun != null) {
+                midRun.run();
+            }
+            permits.acquire();
+            Metadata headers = new Metadata();
+            headers.put(AUTHORIZATION, tokens[i]);
+            VoiceVirtualAgentGrpc.VoiceVirtualAgentStub stub = VoiceVirtualAgentGrpc.newStub(channels.get(i % channels.size()))
+                    .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers))
+                    .withDeadlineAfter(30, TimeUnit.SECONDS);
+            long startedAt = System.nanoTime();
+            stub.listVirtualAgents(request, new StreamObserver<>() {
+                @Override
+                public void onNext(ListVAResponse response) {
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    synchronized (failures) {
+                        failures.merge(Status.fromThrowable(throwable).getCode(), 1, Integer::sum);
+                    }
+                    done();
+                }
+
+                @Override
+                public void onCompleted() {
+                    latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt));
+                    done();
+                }
+
+                private void done() {
+                    permits.release();
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i] + " in " + Arrays.toString(args));
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
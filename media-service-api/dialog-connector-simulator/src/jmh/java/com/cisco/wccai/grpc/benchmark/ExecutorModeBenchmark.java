@@ -0,0 +1,368 @@
+package com.cisco.wccai.grpc.benchmark;
+
+import com.cisco.wcc.ccai.media.v1.ByovaCommon;
+import com.cisco.wcc.ccai.media.v1.VoiceVirtualAgentGrpc;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceInput;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVARequest;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVAResponse;
+import com.cisco.wccai.grpc.server.ServerExecutors;
+import com.cisco.wccai.grpc.server.ServerExecutors.ExecutorMode;
+import com.cisco.wccai.grpc.server.ServerTransportConfig;
+import com.cisco.wccai.grpc.server.VoiceVAImpl;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the gRPC application executor modes (cached pool, virtual threads, direct) under many concurrent
+ * ProcessCallerInput streams. Each (mode, stream count) pair runs in its own JVM so thread pools and JIT state
+ * from one run never leak into the next.
+ *
+ * Every stream sends 160-byte u-law frames every 20 ms from one shared client timer. The reported latency is
+ * the time from the frame that crosses the simulator's speech threshold to the START_OF_INPUT response.
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec@harness -Dharness=ExecutorModeBenchmark \
+ *     -Dharness.args="--modes CACHED,VIRTUAL,DIRECT --streams 1000,5000,10000"
+ * </pre>
+ *
+ * Options: --modes, --streams, --frames (per stream, default 150), --channels (default 16),
+ * --blocking-ms (simulated blocking work per request message, default 0).
+ */
+public final class ExecutorModeBenchmark {
+
+    private static final int FRAME_BYTES = 160;
+    private static final long FRAME_INTERVAL_MS = 20;
+    // VoiceVirtualAgentService answers once 16000 bytes have been buffered, i.e. on the 101st frame.
+    private static final int FRAMES_PER_UTTERANCE = 16000 / FRAME_BYTES + 1;
+    private static final int WARMUP_STREAMS = 100;
+    private static final String RESULT_PREFIX = "RESULT ";
+
+    private ExecutorModeBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options.containsKey("child")) {
+            runChild(options);
+        } else {
+            runComparison(options);
+        }
+    }
+
+    private static void runComparison(Map<String, String> options) throws IOException, InterruptedException {
+        List<String> rows = new ArrayList<>();
+        for (String streams : options.getOrDefault("streams", "1000,5000,10000").split(",")) {
+            for (String mode : options.getOrDefault("modes", "CACHED,VIRTUAL,DIRECT").split(",")) {
+                List<String> command = new ArrayList<>(List.of(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path"),
+                        ExecutorModeBenchmark.class.getName(), "--child",
+                        "--mode", mode.trim(), "--streams", streams.trim()));
+                for (String option : List.of("frames", "channels", "blocking-ms")) {
+                    if (options.containsKey(option)) {
+                        command.add("--" + option);
+                        command.add(options.get(option));
+                    }
+                }
+                rows.add(runChildProcess(command));
+            }
+        }
+        System.out.println();
+        System.out.printf("%-8s %-8s %8s %12s %14s %10s %10s %8s%n",
+                "mode", "streams", "threads", "peakThreads", "ctxSwitches", "p50(ms)", "p99(ms)", "errors");
+        rows.forEach(System.out::println);
+    }
+
+    private static String runChildProcess(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = line.substring(RESULT_PREFIX.length());
+                } else {
+                    System.out.println(line);
+                }
+            }
+        }
+        process.waitFor();
+        return result != null ? result : "run failed: " + String.join(" ", command.subList(command.size() - 4, command.size()));
+    }
+
+    private static void runChild(Map<String, String> options) throws Exception {
+        Configurator.setRootLevel(Level.WARN);
+        Configurator.setLevel("com.cisco.wccai", Level.WARN);
+
+        ExecutorMode mode = ExecutorMode.valueOf(options.get("mode"));
+        int streams = Integer.parseInt(options.get("streams"));
+        int frames = Integer.parseInt(options.getOrDefault("frames", "150"));
+        int channelCount = Integer.parseInt(options.getOrDefault("channels", "16"));
+        long blockingMillis = Long.parseLong(options.getOrDefault("blocking-ms", "0"));
+
+        ServerExecutors serverExecutors = ServerExecutors.of(mode, ServerExecutors.DEFAULT_DIRECT_METHODS);
+        ServerTransportConfig transportConfig = ServerTransportConfig.fromSettings();
+        NettyServerBuilder serverBuilder = transportConfig.newServerBuilder(0);
+        serverExecutors.apply(serverBuilder, false);
+        serverBuilder.addService(new VoiceVAImpl());
+        if (blockingMillis > 0) {
+            serverBuilder.intercept(new BlockingWorkInterceptor(blockingMillis));
+        }
+        Server server = serverBuilder.build().start();
+
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (int i = 0; i < channelCount; i++) {
+            channels.add(NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build());
+        }
+
+        // One shared timer paces every stream, like a media server forwarding RTP.
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+
+        // Warm up class loading and JIT so the measured round does not pay for them.
+        runRound(ticker, channels, Math.min(streams, WARMUP_STREAMS), FRAMES_PER_UTTERANCE + 1, new LatencyRecorder(1));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long switchesBefore = contextSwitches();
+        LatencyRecorder latencies = new LatencyRecorder(streams);
+        long errors = runRound(ticker, channels, streams, frames, latencies);
+        long switches = contextSwitches() - switchesBefore;
+
+        System.out.printf(RESULT_PREFIX + "%-8s %-8d %8d %12d %14d %10.1f %10.1f %8d%n",
+                serverExecutors.getMode() == mode ? mode : mode + "*", streams, threads.getThreadCount(), threads.getPeakThreadCount(),
+                switches, latencies.percentileMillis(50), latencies.percentileMillis(99), errors);
+
+        ticker.shutdownNow();
+        channels.forEach(ManagedChannel::shutdownNow);
+        server.shutdownNow();
+        transportConfig.shutdown();
+        serverExecutors.shutdown();
+        System.exit(0);
+    }
+
+    // Opens the streams, sends the frames from the shared ticker, half-closes and waits for every stream to finish.
+    private static long runRound(ScheduledExecutorService ticker, List<ManagedChannel> channels, int streams, int frames,
+                                 LatencyRecorder latencies) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(streams);
+        List<BenchmarkStream> activeStreams = new ArrayList<>(streams);
+        for (int i = 0; i < streams; i++) {
+            var stub = VoiceVirtualAgentGrpc.newStub(channels.get(i % channels.size()));
+            activeStreams.add(new BenchmarkStream(stub, "bench-" + i, latencies, finished));
+        }
+
+        AtomicInteger tick = new AtomicInteger();
+        CountDownLatch sent = new CountDownLatch(1);
+        ScheduledFuture<?> ticks = ticker.scheduleAtFixedRate(() -> {
+            int frame = tick.getAndIncrement();
+            for (BenchmarkStream stream : activeStreams) {
+                if (frame < frames) {
+                    stream.sendFrame(frame);
+                } else {
+                    stream.halfClose();
+                }
+            }
+            if (frame >= frames) {
+                sent.countDown();
+            }
+        }, 0, FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        sent.await();
+        ticks.cancel(false);
+        boolean completed = finished.await(60, TimeUnit.SECONDS);
+        return activeStreams.stream().filter(stream -> stream.failed).count() + (completed ? 0 : finished.getCount());
+    }
+
+    // Sums voluntary and involuntary switches of all live threads (Linux only, -1 elsewhere).
+    private static long contextSwitches() {
+        Path tasks = Paths.get("/proc/self/task");
+        if (!Files.isDirectory(tasks)) {
+            return -1;
+        }
+        long total = 0;
+        try (DirectoryStream<Path> taskDirectories = Files.newDirectoryStream(tasks)) {
+            for (Path task : taskDirectories) {
+                try {
+                    for (String line : Files.readAllLines(task.resolve("status"))) {
+                        if (line.startsWith("voluntary_ctxt_switches") || line.startsWith("nonvoluntary_ctxt_switches")) {
+                            total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException e) {
+                    // the thread exited while we were reading it
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return total;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i] + " in " + Arrays.toString(args));
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "true");
+            }
+        }
+        return options;
+    }
+
+    /**
+     * One simulated caller. Frames are written only from the shared ticker thread.
+     */
+    private static final class BenchmarkStream implements StreamObserver<VoiceVAResponse> {
+        private static final ByteString FRAME = ByteString.copyFrom(new byte[FRAME_BYTES]);
+
+        private final StreamObserver<VoiceVARequest> requests;
+        private final VoiceVARequest frameRequest;
+        private final LatencyRecorder latencies;
+        private final CountDownLatch finished;
+        private final AtomicLong thresholdSentAt = new AtomicLong();
+        private boolean halfClosed;
+        private volatile boolean failed;
+
+        private BenchmarkStream(VoiceVirtualAgentGrpc.VoiceVirtualAgentStub stub, String conversationId,
+                                LatencyRecorder latencies, CountDownLatch finished) {
+            this.latencies = latencies;
+            this.finished = finished;
+            this.frameRequest = VoiceVARequest.newBuilder()
+                    .setConversationId(conversationId)
+                    .setAudioInput(VoiceInput.newBuilder().setCallerAudio(FRAME))
+                    .build();
+            this.requests = stub.processCallerInput(this);
+        }
+
+        private void sendFrame(int frame) {
+            if (failed) {
+                return;
+            }
+            if (frame % FRAMES_PER_UTTERANCE == FRAMES_PER_UTTERANCE - 1) {
+                thresholdSentAt.set(System.nanoTime());
+            }
+            requests.onNext(frameRequest);
+        }
+
+        private void halfClose() {
+            if (!halfClosed && !failed) {
+                halfClosed = true;
+                requests.onCompleted();
+            }
+        }
+
+        @Override
+        public void onNext(VoiceVAResponse response) {
+            for (ByovaCommon.OutputEvent event : response.getOutputEventsList()) {
+                if (event.getEventType() == ByovaCommon.OutputEvent.EventType.START_OF_INPUT) {
+                    long sentAt = thresholdSentAt.getAndSet(0);
+                    if (sentAt != 0) {
+                        latencies.record(System.nanoTime() - sentAt);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failed = true;
+            finished.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            finished.countDown();
+        }
+    }
+
+    private static final class LatencyRecorder {
+        private final long[] samples;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private LatencyRecorder(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        private void record(long nanos) {
+            int index = count.getAndIncrement();
+            if (index < samples.length) {
+                samples[index] = nanos;
+            }
+        }
+
+        private double percentileMillis(double percentile) {
+            int size = Math.min(count.get(), samples.length);
+            if (size == 0) {
+                return Double.NaN;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Simulates blocking I/O (a key fetch, a file write) in front of every request message.
+     */
+    private static final class BlockingWorkInterceptor implements ServerInterceptor {
+        private final long blockingMillis;
+
+        private BlockingWorkInterceptor(long blockingMillis) {
+            this.blockingMillis = blockingMillis;
+        }
+
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                     ServerCallHandler<ReqT, RespT> next) {
+            return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(next.startCall(call, headers)) {
+                @Override
+                public void onMessage(ReqT message) {
+                    try {
+                        Thread.sleep(blockingMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.onMessage(message);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.cisco.wccai.grpc.benchmark;
+
+import com.cisco.wcc.ccai.media.v1.ConversationAudioGrpc;
+import com.cisco.wcc.ccai.media.v1.Conversationaudioforking.AudioStream;
+import com.cisco.wcc.ccai.media.v1.Conversationaudioforking.ConversationAudioForkingRequest;
+import com.cisco.wcc.ccai.media.v1.Conversationaudioforking.ConversationAudioForkingResponse;
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding;
+import com.cisco.wccai.grpc.server.ConversationAudioForkServiceImpl;
+import com.cisco.wccai.grpc.server.ServerExecutors;
+import com.cisco.wccai.grpc.server.ServerTransportConfig;
+import com.cisco.wccai.grpc.server.fork.AckPolicy;
+import com.cisco.wccai.grpc.server.fork.AudioChunkPool;
+import com.cisco.wccai.grpc.server.fork.AudioSink;
+import com.cisco.wccai.grpc.server.fork.ChannelLayout;
+import com.cisco.wccai.grpc.server.fork.ForkPolicies;
+import com.cisco.wccai.grpc.server.fork.IntakeBudget;
+import com.cisco.wccai.grpc.server.fork.LocalFileAudioSink;
+import com.cisco.wccai.grpc.server.fork.RecordingUploader;
+import com.cisco.wccai.grpc.server.fork.RoleAudioBuffer;
+import com.cisco.wccai.grpc.server.fork.RoleAudioBuffers;
+import com.cisco.wccai.grpc.server.fork.SegmentPolicy;
+import com.cisco.wccai.grpc.server.fork.SpeechAnalytics;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures media forking throughput, in fork streams and stored megabytes per second, on a single box: the
+ * simulator's {@link ConversationAudioForkServiceImpl} saves into a {@link LocalFileAudioSink}, so no cloud
+ * credentials are needed.
+ *
+ * Every stream is a two-party call of {@code --audio-seconds} of 20 ms frames, alternating between the two roles,
+ * sent as fast as the transport accepts them rather than in real time. Up to {@code --concurrency} streams run at
+ * once. The reported latency is from opening a stream until the server acknowledges its completion; the rates
+ * count until every recording is stored by the background uploader. Each (buffer mode, fsync policy) pair gets its
+ * own server and an empty directory.
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec@harness -Dharness=ForkThroughputBenchmark \
+ *     -Dharness.args="--buffer-modes MEMORY,SPILL --fsync NONE,DATA,FULL"
+ * </pre>
+ *
+ * Options: --buffer-modes (default MEMORY,SPILL), --fsync (default NONE,DATA), --streams (measured per row,
+ * default 200), --warmup-streams (default 50), --concurrency (default 32), --channels (default 4), --audio-seconds
+ * (default 60), --encoding (MULAW or LINEAR16, default MULAW), --ack-mode (default FORK_ACK_MODE, every 50 chunks
+ * or every second for EVERY_N and EVERY_T_MS), --segment-seconds (default 0, one recording per role; otherwise the
+ * files column counts segments), --layout (PER_ROLE or STEREO, default PER_ROLE), --intake-budget-mb (default 0,
+ * no budget), --intake-stream-max-mb (default 0, no cap per stream), --sink-delay-ms (added to every store to
+ * mimic slow storage, default 0), --analytics (NONE, OBJECT or RESPONSE, default FORK_ANALYTICS), --dir (default a
+ * new temp directory). The held column is the peak of forked audio held by recordings, which the intake budget and
+ * the cap per stream bound.
+ */
+public final class ForkThroughputBenchmark {
+
+    private static final int FRAMES_PER_SECOND = 50;
+    private static final String[] ROLES = {"caller", "agent"};
+
+    private ForkThroughputBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configurator.setRootLevel(Level.WARN);
+        Configurator.setLevel("com.cisco.wccai", Level.WARN);
+
+        Map<String, String> options = parseOptions(args);
+        int streams = Integer.parseInt(options.getOrDefault("streams", "200"));
+        int warmupStreams = Integer.parseInt(options.getOrDefault("warmup-streams", "50"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        int channelCount = Integer.parseInt(options.getOrDefault("channels", "4"));
+        int audioSeconds = Integer.parseInt(options.getOrDefault("audio-seconds", "60"));
+        AudioEncoding encoding = AudioEncoding.valueOf(options.getOrDefault("encoding", "MULAW").toUpperCase());
+        AckPolicy.AckMode ackMode = AckPolicy.AckMode.valueOf(options.getOrDefault("ack-mode",
+                AckPolicy.fromSettings().getMode().name()).toUpperCase());
+        SegmentPolicy segmentPolicy = SegmentPolicy.of(Integer.parseInt(options.getOrDefault("segment-seconds", "0")), true);
+        ChannelLayout channelLayout = ChannelLayout.of(
+                ChannelLayout.Layout.valueOf(options.getOrDefault("layout", "PER_ROLE").toUpperCase()), 200);
+        long budgetBytes = Long.parseLong(options.getOrDefault("intake-budget-mb", "0")) * 1024 * 1024;
+        long streamMaxBytes = Long.parseLong(options.getOrDefault("intake-stream-max-mb", "0")) * 1024 * 1024;
+        IntakeBudget intakeBudget = budgetBytes > 0 || streamMaxBytes > 0
+                ? new IntakeBudget(budgetBytes > 0 ? budgetBytes : Long.MAX_VALUE, streamMaxBytes > 0 ? streamMaxBytes : Long.MAX_VALUE, 32, 1000)
+                : IntakeBudget.unlimited();
+        long sinkDelayMillis = Long.parseLong(options.getOrDefault("sink-delay-ms", "0"));
+        SpeechAnalytics speechAnalytics = SpeechAnalytics.of(SpeechAnalytics.Output.valueOf(options.getOrDefault("analytics",
+                SpeechAnalytics.fromSettings().getOutput().name()).toUpperCase()), 20, -40, 200);
+        Path directory = options.containsKey("dir") ? Path.of(options.get("dir")) : Files.createTempDirectory("fork-benchmark");
+
+        ConversationAudioForkingRequest[] frames = frames(encoding);
+        long audioBytesPerStream = (long) audioSeconds * FRAMES_PER_SECOND * ROLES.length * frames[0].getAudio().getAudioData().size();
+        List<String> rows = new ArrayList<>();
+        for (String mode : options.getOrDefault("buffer-modes", "MEMORY,SPILL").split(",")) {
+            for (String fsync : options.getOrDefault("fsync", "NONE,DATA").split(",")) {
+                rows.add(runRow(RoleAudioBuffers.BufferMode.valueOf(mode.trim()), LocalFileAudioSink.FsyncPolicy.valueOf(fsync.trim()),
+                        AckPolicy.of(ackMode, 50, 1000), segmentPolicy, channelLayout, speechAnalytics, intakeBudget, sinkDelayMillis, directory,
+                        frames, audioSeconds, audioBytesPerStream, streams, warmupStreams, concurrency, channelCount));
+            }
+        }
+        System.out.println();
+        System.out.println("Acknowledgements: " + ackMode + ", segments: "
+                + (segmentPolicy.isEnabled() ? segmentPolicy.getSegmentSeconds() + " s" : "none") + ", layout: " + channelLayout.getLayout()
+                + ", analytics: " + speechAnalytics.getOutput());
+        System.out.printf("%-7s %-6s %7s %7s %10s %8s %10s %10s %10s %9s%n",
+                "buffers", "fsync", "streams", "failed", "streams/s", "MB/s", "p50(ms)", "p99(ms)", "files", "held(MB)");
+        rows.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    private static String runRow(RoleAudioBuffers.BufferMode mode, LocalFileAudioSink.FsyncPolicy fsync, AckPolicy ackPolicy,
+                                 SegmentPolicy segmentPolicy, ChannelLayout channelLayout, SpeechAnalytics speechAnalytics,
+                                 IntakeBudget intakeBudget,
+                                 long sinkDelayMillis, Path directory,
+                                 ConversationAudioForkingRequest[] frames, int audioSeconds, long audioBytesPerStream,
+                                 int streams, int warmupStreams, int concurrency, int channelCount) throws Exception {
+        Path rowDirectory = directory.resolve(mode + "-" + fsync);
+        RecordingUploader uploader = RecordingUploader.fromSettings(slowed(new LocalFileAudioSink(rowDirectory, fsync), sinkDelayMillis));
+        ConversationAudioForkServiceImpl service = new ConversationAudioForkServiceImpl(uploader,
+                RoleAudioBuffers.of(mode, directory.resolve("spill"), 65536, AudioChunkPool.fromSettings(), intakeBudget),
+                ForkPolicies.of(ackPolicy, segmentPolicy, channelLayout, speechAnalytics));
+        ServerExecutors serverExecutors = ServerExecutors.fromSettings();
+        ServerTransportConfig transportConfig = ServerTransportConfig.fromSettings();
+        NettyServerBuilder serverBuilder = transportConfig.newServerBuilder(0);
+        serverExecutors.apply(serverBuilder, false);
+        Server server = serverBuilder.addService(service).build().start();
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (int i = 0; i < channelCount; i++) {
+            channels.add(NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build());
+        }
+
+        int framesPerStream = audioSeconds * FRAMES_PER_SECOND * ROLES.length;
+        runStreams(channels, frames, framesPerStream, "warmup", warmupStreams, concurrency,
+                new ConcurrentHistogram(3), new EnumMap<>(Status.Code.class));
+        awaitUploads(uploader);
+        Histogram latencyMicros = new ConcurrentHistogram(3);
+        Map<Status.Code, Integer> failures = new EnumMap<>(Status.Code.class);
+        AtomicLong peakHeld = new AtomicLong();
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeld.accumulateAndGet(intakeBudget.getUsedBytes(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+        long started = System.nanoTime();
+        runStreams(channels, frames, framesPerStream, "measured", streams, concurrency, latencyMicros, failures);
+        awaitUploads(uploader);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        sampler.interrupt();
+
+        int failed = failures.values().stream().mapToInt(Integer::intValue).sum();
+        if (failed > 0) {
+            System.out.println(mode + "/" + fsync + " failures by status: " + failures);
+        }
+        long files;
+        try (Stream<Path> stored = Files.walk(rowDirectory)) {
+            files = stored.map(path -> rowDirectory.relativize(path).toString())
+                    .filter(name -> name.contains("measured-") && name.endsWith(".wav"))
+                    .count();
+        }
+        String row = String.format("%-7s %-6s %7d %7d %10.1f %8.1f %10.1f %10.1f %10d %9.1f",
+                mode, fsync, streams, failed, streams / seconds, (streams - failed) * audioBytesPerStream / seconds / 1e6,
+                latencyMicros.getValueAtPercentile(50) / 1000.0, latencyMicros.getValueAtPercentile(99) / 1000.0, files,
+                peakHeld.get() / 1024.0 / 1024.0);
+
+        channels.forEach(ManagedChannel::shutdownNow);
+        server.shutdownNow();
+        server.awaitTermination(5, TimeUnit.SECONDS);
+        transportConfig.shutdown();
+        serverExecutors.shutdown();
+        uploader.shutdown();
+        deleteRecursively(rowDirectory);
+        return row;
+    }
+
+    private static ConversationAudioForkingRequest[] frames(AudioEncoding encoding) {
+        int frameBytes = encoding == AudioEncoding.LINEAR16 ? 320 : 160;
+        ByteString audio = ByteString.copyFrom(new byte[frameBytes]);
+        ConversationAudioForkingRequest[] frames = new ConversationAudioForkingRequest[ROLES.length];
+        for (int i = 0; i < ROLES.length; i++) {
+            frames[i] = ConversationAudioForkingRequest.newBuilder()
+                    .setAudio(AudioStream.newBuilder()
+                            .setAudioData(audio)
+                            .setEncoding(encoding)
+                            .setSampleRateHertz(8000)
+                            .setRoleId(ROLES[i]))
+                    .build();
+        }
+        return frames;
+    }
+
+    // Runs `count` streams with at most `concurrency` open at once; each sends its frames whenever the transport is ready.
+    private static void runStreams(List<ManagedChannel> channels, ConversationAudioForkingRequest[] frames, int framesPerStream,
+                                   String prefix, int count, int concurrency, Histogram latencyMicros,
+                                   Map<Status.Code, Integer> failures) throws InterruptedException {
+        Semaphore permits = new Semaphore(concurrency);
+        CountDownLatch finished = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            permits.acquire();
+            String conversationId = prefix + "-" + i;
+            ConversationAudioForkingRequest[] streamFrames = new ConversationAudioForkingRequest[frames.length];
+            for (int role = 0; role < frames.length; role++) {
+                streamFrames[role] = frames[role].toBuilder().setConversationId(conversationId).build();
+            }
+            long startedAt = System.nanoTime();
+            ConversationAudioGrpc.newStub(channels.get(i % channels.size()))
+                    .withDeadlineAfter(5, TimeUnit.MINUTES)
+                    .streamConversationAudio(new ClientResponseObserver<ConversationAudioForkingRequest, ConversationAudioForkingResponse>() {
+                        private int sent;
+                        private boolean halfClosed;
+
+                        @Override
+                        public void beforeStart(ClientCallStreamObserver<ConversationAudioForkingRequest> requests) {
+                            requests.setOnReadyHandler(() -> {
+                                while (requests.isReady() && sent < framesPerStream) {
+                                    requests.onNext(streamFrames[sent++ % streamFrames.length]);
+                                }
+                                if (sent == framesPerStream && !halfClosed) {
+                                    halfClosed = true;
+                                    requests.onCompleted();
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onNext(ConversationAudioForkingResponse response) {
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            synchronized (failures) {
+                                failures.merge(Status.fromThrowable(throwable).getCode(), 1, Integer::sum);
+                            }
+                            done();
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt));
+                            done();
+                        }
+
+                        private void done() {
+                            permits.release();
+                            finished.countDown();
+                        }
+                    });
+        }
+        finished.await();
+    }
+
+    private static AudioSink slowed(AudioSink sink, long delayMillis) {
+        if (delayMillis <= 0) {
+            return sink;
+        }
+        return new AudioSink() {
+            @Override
+            public void store(String objectName, RoleAudioBuffer recording) throws IOException {
+                pause();
+                sink.store(objectName, recording);
+            }
+
+            @Override
+            public void storeMetadata(String objectName, byte[] content, String contentType) throws IOException {
+                pause();
+                sink.storeMetadata(objectName, content, contentType);
+            }
+
+            @Override
+            public String describe(String objectName) {
+                return sink.describe(objectName);
+            }
+
+            private void pause() throws IOException {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+        };
+    }
+
+    private static void awaitUploads(RecordingUploader uploader) throws InterruptedException {
+        while (uploader.getBacklog() > 0) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i] + " in " + Arrays.toString(args));
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
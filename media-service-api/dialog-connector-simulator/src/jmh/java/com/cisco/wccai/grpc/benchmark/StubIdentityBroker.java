@@ -0,0 +1,193 @@
+package com.cisco.wccai.grpc.benchmark;
+
+import com.cisco.wccai.grpc.server.interceptors.JWTAuthorizationHandler;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for the identity broker's JWKS endpoint, so authentication can be exercised and measured offline.
+ *
+ * It serves {@code <issuer>/oauth2/v2/keys/verificationjwk} with a Cache-Control max-age and can be told, while
+ * running, to answer slowly, to throttle with 429 and Retry-After for a while, or to rotate its signing key.
+ * Point the simulator at it with {@code AUTH_ISSUERS=<issuer>} and use {@link #mintToken} for tokens.
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec@harness -Dharness=StubIdentityBroker \
+ *     -Dharness.args="--port 8443 --latency-ms 50 --max-age-seconds 3600"
+ * </pre>
+ */
+public final class StubIdentityBroker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubIdentityBroker.class);
+    public static final String JWKS_PATH = "/oauth2/v2/keys/verificationjwk";
+    private static final String ISSUER_PATH = "/idb";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String issuer;
+    private final TokenMinter tokenMinter;
+    private final AtomicInteger keyNumber = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger throttledRequests = new AtomicInteger();
+
+    private volatile RSAKey signingKey;
+    private volatile List<RSAKey> publishedKeys;
+    private volatile long latencyMillis;
+    private volatile long maxAgeSeconds = 3600;
+    private volatile long throttleUntil;
+    private volatile int retryAfterSeconds;
+
+    private StubIdentityBroker(HttpServer server, ExecutorService executor, String datasourceUrl) {
+        this.server = server;
+        this.executor = executor;
+        this.issuer = "http://127.0.0.1:" + server.getAddress().getPort() + ISSUER_PATH;
+        this.tokenMinter = new TokenMinter(issuer, datasourceUrl);
+        this.signingKey = TokenMinter.newSigningKey("stub-key-" + keyNumber.incrementAndGet());
+        this.publishedKeys = List.of(signingKey);
+    }
+
+    /**
+     * Starts the stub on the loopback interface.
+     *
+     * @param port          the port, 0 for any free one
+     * @param datasourceUrl the datasource URL claim of minted tokens
+     */
+    public static StubIdentityBroker start(int port, String datasourceUrl) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Several threads, so injected latency delays concurrent fetches without serializing them
+        ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "stub-identity-broker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        StubIdentityBroker broker = new StubIdentityBroker(server, executor, datasourceUrl);
+        server.createContext(ISSUER_PATH + JWKS_PATH, broker::handle);
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info("Stub identity broker started, issuer {}", broker.issuer);
+        return broker;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getThrottledRequests() {
+        return throttledRequests.get();
+    }
+
+    /**
+     * @return a token signed with the current signing key
+     */
+    public String mintToken(Duration timeToLive) {
+        return tokenMinter.mint(signingKey, timeToLive);
+    }
+
+    public TokenMinter getTokenMinter() {
+        return tokenMinter;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setMaxAgeSeconds(long maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Answers every request with 429 and the given Retry-After for the given time.
+     */
+    public void throttleFor(Duration duration, int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.throttleUntil = System.currentTimeMillis() + duration.toMillis();
+    }
+
+    /**
+     * Switches to a new signing key. Tokens minted from now on carry its kid.
+     *
+     * @param keepPrevious whether the JWKS still lists the previous key, as during a graceful rotation
+     */
+    public void rotateKey(boolean keepPrevious) {
+        rotateTo(TokenMinter.newSigningKey("stub-key-" + keyNumber.incrementAndGet()), keepPrevious);
+    }
+
+    /**
+     * Switches to a signing key created beforehand, e.g. one tokens were already minted with.
+     */
+    public void rotateTo(RSAKey next, boolean keepPrevious) {
+        RSAKey previous = signingKey;
+        publishedKeys = keepPrevious ? List.of(previous, next) : List.of(next);
+        signingKey = next;
+        LOGGER.info("Rotated signing key from {} to {}", previous.getKeyID(), next.getKeyID());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            long latency = latencyMillis;
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            if (System.currentTimeMillis() < throttleUntil) {
+                throttledRequests.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            List<JWK> publicKeys = new ArrayList<>();
+            publishedKeys.forEach(key -> publicKeys.add(key.toPublicJWK()));
+            byte[] body = new JWKSet(publicKeys).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=" + maxAgeSeconds);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        StubIdentityBroker broker = start(Integer.parseInt(options.getOrDefault("port", "8443")),
+                options.getOrDefault("datasource-url", JWTAuthorizationHandler.getDefaultDatasourceUrl()));
+        broker.setLatencyMillis(Long.parseLong(options.getOrDefault("latency-ms", "0")));
+        broker.setMaxAgeSeconds(Long.parseLong(options.getOrDefault("max-age-seconds", "3600")));
+        System.out.println("Start the simulator with AUTH_ISSUERS=" + broker.getIssuer());
+        System.out.println("TOKEN=" + broker.mintToken(Duration.ofHours(1)));
+        Thread.currentThread().join();
+    }
+}
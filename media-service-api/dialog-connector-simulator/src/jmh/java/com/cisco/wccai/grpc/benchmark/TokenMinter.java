@@ -0,0 +1,71 @@
+package com.cisco.wccai.grpc.benchmark;
+
+import com.cisco.wccai.grpc.server.interceptors.JWTAuthorizationHandler;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Mints RS256 datasource tokens that pass {@link JWTAuthorizationHandler} validation, for an issuer whose keys the
+ * simulator can fetch, such as a {@link StubIdentityBroker}.
+ *
+ * Every token gets a fresh {@code jti}, so no two tokens are equal and none is served from the verified-token cache.
+ */
+public final class TokenMinter {
+
+    private final String issuer;
+    private final String datasourceUrl;
+
+    /**
+     * @param issuer        the {@code iss} claim, which must be one of the simulator's AUTH_ISSUERS
+     * @param datasourceUrl the {@code com.cisco.datasource.url} claim, which must match the simulator's DATASOURCE_URL
+     */
+    public TokenMinter(String issuer, String datasourceUrl) {
+        this.issuer = issuer;
+        this.datasourceUrl = datasourceUrl;
+    }
+
+    /**
+     * Generates a 2048-bit RSA signing key.
+     */
+    public static RSAKey newSigningKey(String kid) {
+        try {
+            return new RSAKeyGenerator(2048).keyID(kid).keyUse(KeyUse.SIGNATURE).algorithm(JWSAlgorithm.RS256).generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Cannot generate an RSA key", e);
+        }
+    }
+
+    /**
+     * @return a serialized token signed with the key, its {@code kid} in the header, valid for {@code timeToLive}
+     */
+    public String mint(RSAKey signingKey, Duration timeToLive) {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .audience("dialog-connector-simulator")
+                .subject("token-minter")
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(new Date())
+                .expirationTime(new Date(System.currentTimeMillis() + timeToLive.toMillis()))
+                .claim("com.cisco.datasource.url", datasourceUrl)
+                .claim("com.cisco.datasource.schema.uuid", JWTAuthorizationHandler.VALID_DATASOURCE_SCHEMA_UUID)
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+        try {
+            jwt.sign(new RSASSASigner(signingKey));
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Cannot sign token with key " + signingKey.getKeyID(), e);
+        }
+        return jwt.serialize();
+    }
+}
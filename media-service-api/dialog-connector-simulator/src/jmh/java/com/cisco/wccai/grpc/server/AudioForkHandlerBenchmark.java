@@ -0,0 +1,109 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wcc.ccai.media.v1.Conversationaudioforking.AudioStream;
+import com.cisco.wcc.ccai.media.v1.Conversationaudioforking.ConversationAudioForkingRequest;
+import com.cisco.wcc.ccai.media.v1.Conversationaudioforking.ConversationAudioForkingResponse;
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding;
+import com.cisco.wccai.grpc.server.fork.AckPolicy;
+import com.cisco.wccai.grpc.server.fork.ChannelLayout;
+import com.cisco.wccai.grpc.server.fork.ForkPolicies;
+import com.cisco.wccai.grpc.server.fork.RoleAudioBuffers;
+import com.cisco.wccai.grpc.server.fork.SegmentPolicy;
+import com.cisco.wccai.grpc.server.fork.SpeechAnalytics;
+import com.cisco.wccai.grpc.server.fork.WavFormat;
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Media forking: {@code AudioStreamToGcsHandler.onNext} buffering and {@code WavFormat.header}.
+ *
+ * A fresh handler takes one minute of a two-party call (3000 frames of 20 ms u-law, alternating roles) per
+ * invocation, so the buffers grow the way they do in production and do not accumulate across iterations.
+ * Scores are per frame. Nothing is uploaded: the stream is never completed, and its buffers (temp files in SPILL
+ * mode) are discarded at the end of the invocation.
+ * Acknowledgements go to a Blackhole, for every frame or, with EVERY_N, for every 50th. With STEREO, the frames,
+ * which carry no timestamps, are interleaved into one 2-channel recording through the jitter buffer. With OBJECT analytics, every frame is also
+ * decoded for energy and voice activity; the summary is never built, as the stream is not completed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class AudioForkHandlerBenchmark {
+
+    private static final int FRAMES_PER_CALL = 3000;
+    private static final int FRAME_BYTES = 160;
+    private static final WavFormat MULAW_FORMAT = WavFormat.of(AudioEncoding.MULAW, 8000, 1);
+
+    @Param({"MEMORY", "SPILL"})
+    private RoleAudioBuffers.BufferMode bufferMode;
+
+    @Param({"EVERY_CHUNK", "EVERY_N"})
+    private AckPolicy.AckMode ackMode;
+
+    @Param({"PER_ROLE", "STEREO"})
+    private ChannelLayout.Layout layout;
+
+    @Param({"NONE", "OBJECT"})
+    private SpeechAnalytics.Output analytics;
+
+    private RoleAudioBuffers buffers;
+    private ForkPolicies policies;
+    private ConversationAudioForkingRequest[] frames;
+    private VoiceVirtualAgentServiceBenchmark.BlackholeObserver<ConversationAudioForkingResponse> responses;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        responses = new VoiceVirtualAgentServiceBenchmark.BlackholeObserver<>(blackhole);
+        buffers = RoleAudioBuffers.of(bufferMode, Path.of(System.getProperty("java.io.tmpdir")), 65536);
+        policies = ForkPolicies.of(AckPolicy.of(ackMode, 50, 1000), SegmentPolicy.of(0, false),
+                ChannelLayout.of(layout, 200), SpeechAnalytics.of(analytics, 20, -40, 200));
+        ByteString audio = ByteString.copyFrom(new byte[FRAME_BYTES]);
+        frames = new ConversationAudioForkingRequest[2];
+        String[] roles = {"caller-role", "agent-role"};
+        for (int i = 0; i < roles.length; i++) {
+            frames[i] = ConversationAudioForkingRequest.newBuilder()
+                    .setConversationId("benchmark-conversation")
+                    .setAudio(AudioStream.newBuilder()
+                            .setAudioData(audio)
+                            .setEncoding(AudioEncoding.MULAW)
+                            .setSampleRateHertz(8000)
+                            .setRoleId(roles[i]))
+                    .build();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_CALL)
+    public ConversationAudioForkServiceImpl.AudioStreamToGcsHandler bufferOneMinuteCall() {
+        var handler = new ConversationAudioForkServiceImpl.AudioStreamToGcsHandler(responses, null, buffers, policies);
+        for (int i = 0; i < FRAMES_PER_CALL; i++) {
+            handler.onNext(frames[i & 1]);
+        }
+        handler.cleanup();
+        return handler;
+    }
+
+    @Benchmark
+    public ByteBuffer wavHeader() {
+        return MULAW_FORMAT.header(FRAMES_PER_CALL * FRAME_BYTES / 2);
+    }
+}
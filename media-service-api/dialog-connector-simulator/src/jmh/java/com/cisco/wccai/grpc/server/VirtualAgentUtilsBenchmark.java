@@ -0,0 +1,81 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wcc.ccai.media.v1.ByovaCommon;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVAResponse;
+import com.cisco.wccai.grpc.model.State;
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link VirtualAgentUtils} response builders: the shared fixed responses, the builders behind them,
+ * and the responses that are still built per call (CHUNK slices, output events, DTMF events).
+ * {@code serialize*} adds the protobuf encoding the transport performs for every response.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class VirtualAgentUtilsBenchmark {
+
+    private ByteString promptChunk;
+
+    @Setup
+    public void setUp() {
+        ByteString prompt = PromptAssetRegistry.getAudio(VirtualAgentUtils.THANK_YOU_AUDIO);
+        // 100 ms of 8 kHz u-law, the default CHUNK size
+        promptChunk = prompt.substring(0, Math.min(prompt.size(), 800));
+    }
+
+    @Benchmark
+    public VoiceVAResponse sharedCallStartResponse() {
+        return VirtualAgentUtils.getCallStartResponse();
+    }
+
+    @Benchmark
+    public VoiceVAResponse buildCallStartResponse() {
+        return VirtualAgentUtils.buildCallStartResponse();
+    }
+
+    @Benchmark
+    public VoiceVAResponse buildQueryFinalResponse() {
+        return VirtualAgentUtils.buildQueryFinalResponse();
+    }
+
+    @Benchmark
+    public VoiceVAResponse queryChunkResponse() {
+        return VirtualAgentUtils.getQueryChunkResponse(promptChunk);
+    }
+
+    @Benchmark
+    public VoiceVAResponse outputEventResponse() {
+        return VirtualAgentUtils.getVoiceVaResponseForOutPutEvent(ByovaCommon.OutputEvent.EventType.START_OF_INPUT);
+    }
+
+    @Benchmark
+    public Optional<VoiceVAResponse> dtmfResponse() {
+        return VirtualAgentUtils.getDTMFResponse(State.END_OF_INPUT);
+    }
+
+    @Benchmark
+    public byte[] serializeQueryFinalResponse() {
+        return VirtualAgentUtils.getQueryFinalResponse().toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeQueryChunkResponse() {
+        return VirtualAgentUtils.getQueryChunkResponse(promptChunk).toByteArray();
+    }
+}
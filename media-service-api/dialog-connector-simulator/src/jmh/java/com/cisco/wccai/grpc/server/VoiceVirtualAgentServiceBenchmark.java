@@ -0,0 +1,101 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wcc.ccai.media.v1.ByovaCommon;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceInput;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVARequest;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVAResponse;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One ProcessCallerInput message through {@link VoiceVirtualAgentService} for each input type.
+ * The audio benchmark feeds 20 ms u-law frames, so every 101st frame crosses the speech threshold
+ * and produces the query responses, just like a live call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class VoiceVirtualAgentServiceBenchmark {
+
+    private static final int FRAME_BYTES = 160;
+
+    private VoiceVirtualAgentService service;
+    private StreamObserver<VoiceVAResponse> responses;
+    private VoiceVARequest audioFrame;
+    private VoiceVARequest dtmfInput;
+    private VoiceVARequest sessionStart;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        service = new VoiceVirtualAgentService();
+        responses = new BlackholeObserver<>(blackhole);
+        audioFrame = VoiceVARequest.newBuilder()
+                .setConversationId("benchmark-conversation")
+                .setAudioInput(VoiceInput.newBuilder().setCallerAudio(ByteString.copyFrom(new byte[FRAME_BYTES])))
+                .build();
+        dtmfInput = VoiceVARequest.newBuilder()
+                .setConversationId("benchmark-conversation")
+                .setDtmfInput(ByovaCommon.DTMFInputs.newBuilder().addDtmfEvents(ByovaCommon.DTMFDigits.DTMF_DIGIT_NINE))
+                .build();
+        sessionStart = VoiceVARequest.newBuilder()
+                .setConversationId("benchmark-conversation")
+                .setEventInput(ByovaCommon.EventInput.newBuilder().setEventType(ByovaCommon.EventInput.EventType.SESSION_START))
+                .build();
+    }
+
+    @Benchmark
+    public void audioFrame() {
+        service.processVoiceVirtualAgentRequest(audioFrame, responses);
+    }
+
+    @Benchmark
+    public void dtmfInput() {
+        service.processVoiceVirtualAgentRequest(dtmfInput, responses);
+    }
+
+    @Benchmark
+    public void sessionStartEvent() {
+        service.processVoiceVirtualAgentRequest(sessionStart, responses);
+    }
+
+    /**
+     * Stands in for the gRPC response stream; consuming each message keeps it from being optimized away.
+     */
+    static final class BlackholeObserver<T> implements StreamObserver<T> {
+        private final Blackhole blackhole;
+
+        BlackholeObserver(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onNext(T value) {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            blackhole.consume(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
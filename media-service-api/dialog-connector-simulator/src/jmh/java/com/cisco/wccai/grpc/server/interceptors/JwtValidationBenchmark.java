@@ -0,0 +1,146 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.interfaces.RSAPublicKey;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JWTAuthorizationHandler#validateToken} against a locally minted RS256 token.
+ *
+ * The JWKS holds two keys with the signing key second, like a broker in the middle of a key rotation, and is
+ * seeded into the handler's cache so no request leaves the JVM. {@code parseOnceAndValidate} is the path the
+ * authorization interceptor takes on a cache miss; {@code verifiedTokenCacheHit} is what it costs instead once
+ * the token is in the {@link VerifiedTokenCache}.
+ *
+ * {@code perKeyParseSignature} keeps the signature check as it was before {@link JwksKeyStore}: every JWK
+ * parsed, the token parsed again and a new verifier built for each key until one matches.
+ * {@code keyStoreSignature} is the same check against the pre-parsed, kid-indexed store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class JwtValidationBenchmark {
+
+    private static final String ISSUER = "https://idbroker.webex.com/idb";
+    private static final String DATASOURCE_SCHEMA_UUID = "523e1b7f-4693-47bc-b84e-a7b7a505fb0b";
+
+    private String token;
+    private JWTAuthorizationHandler handler;
+    private VerifiedTokenCache verifiedTokens;
+    private PublicKeyResponse jwks;
+    private JwksKeyStore keyStore;
+
+    @Setup
+    public void setUp() throws JOSEException, AccessTokenException {
+        RSAKey rotatedKey = new RSAKeyGenerator(2048).keyID("rotated-key").generate();
+        RSAKey signingKey = new RSAKeyGenerator(2048).keyID("signing-key").generate();
+
+        jwks = new PublicKeyResponse();
+        jwks.setKeys(List.of(toKey(rotatedKey), toKey(signingKey)));
+        JWTAuthorizationHandler.cachePublicKeys(ISSUER, jwks, TimeUnit.HOURS.toMillis(24));
+        keyStore = JwksKeyStore.from(jwks, Long.MAX_VALUE);
+
+        // Same resolution as JWTAuthorizationHandler: environment first, then config.properties
+        String datasourceUrl = System.getenv("DATASOURCE_URL") != null ? System.getenv("DATASOURCE_URL")
+                : LoadProperties.loadProperties().getProperty("DATASOURCE_URL");
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .audience("dialog-connector-simulator")
+                .subject("benchmark")
+                .jwtID(UUID.randomUUID().toString())
+                .expirationTime(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+                .claim("com.cisco.datasource.url", datasourceUrl)
+                .claim("com.cisco.datasource.schema.uuid", DATASOURCE_SCHEMA_UUID)
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(signingKey));
+        token = jwt.serialize();
+
+        handler = new JWTAuthorizationHandler();
+        if (!handler.validateToken(token)) {
+            throw new IllegalStateException("Benchmark token does not validate");
+        }
+        verifiedTokens = new VerifiedTokenCache(1000);
+        verifiedTokens.put(token, claims.getExpirationTime().getTime());
+    }
+
+    @Benchmark
+    public boolean validateToken() throws AccessTokenException {
+        return handler.validateToken(token);
+    }
+
+    @Benchmark
+    public boolean factoryAndValidate() throws AccessTokenException {
+        return AuthorizationHandlerFactory.getAuthorizationHandler(token).validateToken(token);
+    }
+
+    @Benchmark
+    public boolean parseOnceAndValidate() throws AccessTokenException {
+        return JWTAuthorizationHandler.getInstance().validateToken(AuthorizationHandlerFactory.parseJWT(token));
+    }
+
+    @Benchmark
+    public boolean perKeyParseSignature() throws ParseException {
+        SignedJWT.parse(token);
+        for (PublicKeyResponse.Key key : jwks.getKeys()) {
+            try {
+                RSAPublicKey publicKey = (RSAPublicKey) JWK.parse(key.toString()).toRSAKey().toPublicKey();
+                if (SignedJWT.parse(token).verify(new RSASSAVerifier(publicKey))) {
+                    return true;
+                }
+            } catch (JOSEException | ParseException e) {
+                // the old loop logged and moved on to the next key
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean keyStoreSignature() throws ParseException, JOSEException {
+        return keyStore.verify(SignedJWT.parse(token));
+    }
+
+    @Benchmark
+    public boolean verifiedTokenCacheHit() {
+        return verifiedTokens.isVerified(token);
+    }
+
+    private static PublicKeyResponse.Key toKey(RSAKey rsaKey) {
+        PublicKeyResponse.Key key = new PublicKeyResponse.Key();
+        key.setKty("RSA");
+        key.setUse("sig");
+        key.setAlg("RS256");
+        key.setKid(rsaKey.getKeyID());
+        key.setN(rsaKey.getModulus().toString());
+        key.setE(rsaKey.getPublicExponent().toString());
+        return key;
+    }
+}
@@ -6,12 +6,10 @@ import com.cisco.wcc.ccai.media.v1.Voicevirtualagent;
 import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVARequest;
 import com.cisco.wccai.grpc.utils.Utils;
 import com.google.common.util.concurrent.Uninterruptibles;
-import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomStringUtils;
 
-import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -105,17 +103,18 @@ public class VoiceVAClientImpl {
 
     private void sendAudioStream(StreamObserver<VoiceVARequest> requestObserver, String convoId, VoiceVAStreamObserver streamObserver) {
         long startTime = System.currentTimeMillis();
-        var audioToBookFlight = Utils.getAudioBytesForBookAFlight().toByteArray();
-        var totalChunks = audioToBookFlight.length / 160;
+        var audioToBookFlight = Utils.getAudioBytesForBookAFlight();
+        var totalChunks = audioToBookFlight.size() / 160;
         int currentChunk = 0;
         log.info("Sending audio stream to VA");
         while (currentChunk < totalChunks && !streamObserver.isAnyError()) {
-            var chunk = Arrays.copyOfRange(audioToBookFlight, currentChunk * 160, (currentChunk + 1) * 160);
+            // substring shares the audio buffer instead of copying each frame
+            var chunk = audioToBookFlight.substring(currentChunk * 160, (currentChunk + 1) * 160);
             requestObserver.onNext(VoiceVARequest
                     .newBuilder()
                     .setAudioInput(Voicevirtualagent.VoiceInput
                             .newBuilder()
-                            .setCallerAudio(ByteString.copyFrom(chunk))
+                            .setCallerAudio(chunk)
                             .build())
                     .setConversationId(convoId)
                     .build());
@@ -0,0 +1,347 @@
+package com.cisco.wccai.grpc.client;
+
+import com.cisco.wcc.ccai.media.v1.ByovaCommon;
+import com.cisco.wcc.ccai.media.v1.VoiceVirtualAgentGrpc;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVARequest;
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVAResponse;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import com.cisco.wccai.grpc.utils.Utils;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.MetadataUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives many concurrent ProcessCallerInput conversations against a running simulator to find how many
+ * calls a pod can carry. {@link VoiceVAClient} plays a single conversation; this plays N of them.
+ *
+ * Conversations are started evenly over the ramp-up period. One shared timer paces every conversation at
+ * one 160-byte u-law frame per 20 ms, the way a media server forwards RTP, and frames are zero-copy slices
+ * of one audio buffer. A conversation whose transport is not ready skips the tick and catches up once it
+ * is, so a slow server shows up as backpressured ticks instead of unbounded client-side buffering.
+ *
+ * Latencies are measured from the frame that crosses the simulator's speech threshold to the START_OF_INPUT
+ * and END_OF_INPUT events and the first prompt, and reported as HdrHistogram percentiles.
+ *
+ * <pre>
+ * java -cp target/dialog-connector-simulator-1.0.0-SNAPSHOT-allinone.jar \
+ *     com.cisco.wccai.grpc.client.VoiceVALoadGenerator --conversations 2000 --ramp-up-seconds 60 --call-seconds 30
+ * </pre>
+ *
+ * Options: --conversations (default 100), --ramp-up-seconds (10), --call-seconds (30), --channels (4),
+ * --host and --port (API_URL and PORT), --token (TOKEN, sent as the authorization header),
+ * --report-seconds (5), --utterance-bytes (16000, the simulator's speech threshold),
+ * --histogram-file (writes the full percentile distributions).
+ */
+@Slf4j
+public final class VoiceVALoadGenerator {
+
+    private static final int FRAME_BYTES = 160;
+    private static final long FRAME_INTERVAL_MS = 20;
+    private static final long FRAME_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(FRAME_INTERVAL_MS);
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final Metadata.Key<String> AUTHORIZATION = Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final ByteString[] frames;
+    private final int framesPerCall;
+    private final int thresholdFrame;
+    private final List<VoiceVirtualAgentGrpc.VoiceVirtualAgentStub> stubs = new ArrayList<>();
+    private final List<ManagedChannel> channels = new ArrayList<>();
+
+    private final Histogram startOfInputLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram endOfInputLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram firstPromptLatency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder backpressuredTicks = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private VoiceVALoadGenerator(String host, int port, int channelCount, String token, int callSeconds, int utteranceBytes) {
+        this.frames = sliceFrames(Utils.getAudioBytesForBookAFlight());
+        this.framesPerCall = (int) (TimeUnit.SECONDS.toMillis(callSeconds) / FRAME_INTERVAL_MS);
+        // VoiceVirtualAgentService answers on the first frame after utteranceBytes have been buffered.
+        this.thresholdFrame = (utteranceBytes + FRAME_BYTES - 1) / FRAME_BYTES;
+        for (int i = 0; i < channelCount; i++) {
+            ManagedChannel channel = NettyChannelBuilder.forAddress(host, port)
+                    .negotiationType(NegotiationType.PLAINTEXT)
+                    // Callbacks only record timestamps, so they run on the transport thread.
+                    .directExecutor()
+                    .build();
+            channels.add(channel);
+            VoiceVirtualAgentGrpc.VoiceVirtualAgentStub stub = VoiceVirtualAgentGrpc.newStub(channel);
+            if (token != null) {
+                Metadata headers = new Metadata();
+                headers.put(AUTHORIZATION, token);
+                stub = stub.withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers));
+            }
+            stubs.add(stub);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        int conversations = Integer.parseInt(options.getOrDefault("conversations", "100"));
+        long rampUpNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("ramp-up-seconds", "10")));
+        int callSeconds = Integer.parseInt(options.getOrDefault("call-seconds", "30"));
+        long reportNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("report-seconds", "5")));
+
+        VoiceVALoadGenerator generator = new VoiceVALoadGenerator(
+                options.getOrDefault("host", LoadProperties.getSetting(VoiceVAClient.API_URL, "localhost")),
+                Integer.parseInt(options.getOrDefault("port", LoadProperties.getSetting(VoiceVAClient.PORT, "8086"))),
+                Integer.parseInt(options.getOrDefault("channels", "4")),
+                options.getOrDefault("token", LoadProperties.getSetting("TOKEN", null)),
+                callSeconds,
+                Integer.parseInt(options.getOrDefault("utterance-bytes", "16000")));
+
+        log.info("Starting {} conversations of {} s over {} s on {} channels", conversations, callSeconds,
+                TimeUnit.NANOSECONDS.toSeconds(rampUpNanos), generator.channels.size());
+        long startTime = System.nanoTime();
+        boolean finished = generator.run(conversations, rampUpNanos, reportNanos);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        generator.printReport(elapsedMillis, finished);
+        if (options.containsKey("histogram-file")) {
+            generator.writeHistograms(options.get("histogram-file"));
+        }
+        generator.channels.forEach(ManagedChannel::shutdownNow);
+        System.exit(finished && generator.failed.sum() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs every conversation to completion, or until the deadline a minute after the last one should
+     * have ended. Returns false when the deadline was hit.
+     */
+    private boolean run(int conversations, long rampUpNanos, long reportNanos) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(conversations);
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Only the ticker thread touches the active list and sends frames.
+        List<Conversation> active = new ArrayList<>();
+        long startTime = System.nanoTime();
+        long[] lastReport = {startTime};
+        int[] started = {0};
+
+        ticker.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            while (started[0] < conversations
+                    && now - startTime >= rampUpNanos * started[0] / conversations) {
+                Conversation conversation = new Conversation("load-" + started[0], stubs.get(started[0] % stubs.size()), finished);
+                conversation.start(now);
+                active.add(conversation);
+                started[0]++;
+            }
+            Iterator<Conversation> iterator = active.iterator();
+            while (iterator.hasNext()) {
+                if (!iterator.next().tick(now)) {
+                    iterator.remove();
+                }
+            }
+            if (now - lastReport[0] >= reportNanos) {
+                lastReport[0] = now;
+                log.info("started={} active={} completed={} failed={} framesSent={} backpressuredTicks={} startOfInput p99={} ms",
+                        started[0], active.size(), completed.sum(), failed.sum(), framesSent.sum(), backpressuredTicks.sum(),
+                        toMillis(startOfInputLatency.getValueAtPercentile(99)));
+            }
+        }, 0, FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        long deadlineNanos = rampUpNanos + framesPerCall * FRAME_INTERVAL_NANOS + TimeUnit.MINUTES.toNanos(1);
+        boolean allFinished = finished.await(deadlineNanos, TimeUnit.NANOSECONDS);
+        ticker.shutdownNow();
+        ticker.awaitTermination(1, TimeUnit.SECONDS);
+        return allFinished;
+    }
+
+    private void printReport(long elapsedMillis, boolean finished) {
+        System.out.println();
+        System.out.printf("conversations: completed=%d failed=%d%s, elapsed %d ms%n", completed.sum(), failed.sum(),
+                finished ? "" : " (deadline reached)", elapsedMillis);
+        System.out.printf("frames sent: %d, backpressured ticks: %d%n", framesSent.sum(), backpressuredTicks.sum());
+        System.out.printf("%-16s %8s %10s %10s %10s %10s %10s%n", "latency", "count", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)");
+        printRow("START_OF_INPUT", startOfInputLatency);
+        printRow("END_OF_INPUT", endOfInputLatency);
+        printRow("first prompt", firstPromptLatency);
+    }
+
+    private static void printRow(String name, Histogram histogram) {
+        System.out.printf("%-16s %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getTotalCount(),
+                toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(90)),
+                toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getValueAtPercentile(99.9)),
+                toMillis(histogram.getMaxValue()));
+    }
+
+    private void writeHistograms(String fileName) {
+        try (PrintStream out = new PrintStream(fileName)) {
+            for (Map.Entry<String, Histogram> entry : Map.of("START_OF_INPUT", startOfInputLatency,
+                    "END_OF_INPUT", endOfInputLatency, "first prompt", firstPromptLatency).entrySet()) {
+                out.println("# " + entry.getKey() + " latency (ms)");
+                entry.getValue().outputPercentileDistribution(out, 1000.0);
+                out.println();
+            }
+        } catch (FileNotFoundException e) {
+            log.error("Could not write histograms to {}: {}", fileName, e.getMessage());
+        }
+    }
+
+    // Slices the WAV into 20 ms frames; substring shares the backing array, so no audio is copied.
+    private static ByteString[] sliceFrames(ByteString audio) {
+        int count = audio.size() / FRAME_BYTES;
+        if (count == 0) {
+            throw new IllegalStateException("No audio available to stream");
+        }
+        ByteString[] slices = new ByteString[count];
+        for (int i = 0; i < count; i++) {
+            slices[i] = audio.substring(i * FRAME_BYTES, (i + 1) * FRAME_BYTES);
+        }
+        return slices;
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs but got " + Arrays.toString(args));
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    /**
+     * One simulated caller on its own ProcessCallerInput stream.
+     */
+    private final class Conversation implements ClientResponseObserver<VoiceVARequest, VoiceVAResponse> {
+        private final String conversationId;
+        private final VoiceVirtualAgentGrpc.VoiceVirtualAgentStub stub;
+        private final CountDownLatch finished;
+        private final AtomicBoolean terminated = new AtomicBoolean();
+        private ClientCallStreamObserver<VoiceVARequest> requests;
+        private long startTime;
+        private int sent;
+        private volatile long thresholdSentAt;
+        private boolean startOfInputSeen;
+        private boolean endOfInputSeen;
+        private boolean firstPromptSeen;
+
+        private Conversation(String conversationId, VoiceVirtualAgentGrpc.VoiceVirtualAgentStub stub, CountDownLatch finished) {
+            this.conversationId = conversationId;
+            this.stub = stub;
+            this.finished = finished;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<VoiceVARequest> requestStream) {
+            this.requests = requestStream;
+        }
+
+        private void start(long now) {
+            startTime = now;
+            stub.processCallerInput(this);
+            requests.onNext(VoiceVARequest.newBuilder()
+                    .setConversationId(conversationId)
+                    .setAudioInput(Voicevirtualagent.VoiceInput.newBuilder()
+                            .setEncoding(Voicevirtualagent.VoiceInput.VoiceEncoding.MULAW_FORMAT)
+                            .setSampleRateHertz(8000))
+                    .build());
+        }
+
+        /**
+         * Sends the frames that are due, as far as the transport accepts them, and half-closes after the last one.
+         * Returns false once the conversation no longer needs the ticker.
+         */
+        private boolean tick(long now) {
+            if (terminated.get()) {
+                return false;
+            }
+            int due = (int) Math.min(framesPerCall, (now - startTime) / FRAME_INTERVAL_NANOS + 1);
+            while (sent < due && requests.isReady()) {
+                if (sent == thresholdFrame) {
+                    thresholdSentAt = System.nanoTime();
+                }
+                requests.onNext(VoiceVARequest.newBuilder()
+                        .setConversationId(conversationId)
+                        .setAudioInput(Voicevirtualagent.VoiceInput.newBuilder().setCallerAudio(frames[sent % frames.length]))
+                        .build());
+                sent++;
+                framesSent.increment();
+            }
+            if (sent < due) {
+                backpressuredTicks.increment();
+                return true;
+            }
+            if (sent == framesPerCall) {
+                requests.onCompleted();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void onNext(VoiceVAResponse response) {
+            long sentAt = thresholdSentAt;
+            if (sentAt == 0) {
+                return;
+            }
+            long latencyMicros = Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt));
+            for (ByovaCommon.OutputEvent event : response.getOutputEventsList()) {
+                if (!startOfInputSeen && event.getEventType() == ByovaCommon.OutputEvent.EventType.START_OF_INPUT) {
+                    startOfInputSeen = true;
+                    startOfInputLatency.recordValue(latencyMicros);
+                } else if (!endOfInputSeen && event.getEventType() == ByovaCommon.OutputEvent.EventType.END_OF_INPUT) {
+                    endOfInputSeen = true;
+                    endOfInputLatency.recordValue(latencyMicros);
+                }
+            }
+            if (!firstPromptSeen && response.getPromptsCount() > 0) {
+                firstPromptSeen = true;
+                firstPromptLatency.recordValue(latencyMicros);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (terminated.compareAndSet(false, true)) {
+                log.warn("Conversation {} failed: {}", conversationId, throwable.getMessage());
+                failed.increment();
+                finished.countDown();
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            if (terminated.compareAndSet(false, true)) {
+                completed.increment();
+                finished.countDown();
+            }
+        }
+    }
+}
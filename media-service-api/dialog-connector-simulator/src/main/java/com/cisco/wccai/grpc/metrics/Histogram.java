@@ -0,0 +1,71 @@
+package com.cisco.wccai.grpc.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-bucket histogram. Buckets are allocated once at registration, so recording a value is a
+ * bounded scan plus a {@link LongAdder} increment and never allocates.
+ * Values are recorded in whatever unit the metric name declares (e.g. "_ms", "_bytes").
+ */
+public final class Histogram {
+
+    private final long[] upperBounds;
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    Histogram(long[] upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("Histogram bucket bounds must be strictly increasing");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int index = 0;
+        while (index < upperBounds.length && value > upperBounds[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    long[] getUpperBounds() {
+        return upperBounds;
+    }
+
+    /**
+     * @return the non-cumulative count of each bucket; the last entry is the +Inf bucket
+     */
+    long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Bucket bounds suitable for latencies in milliseconds, from sub-frame to multi-second.
+     */
+    public static long[] latencyMillisBuckets() {
+        return new long[]{1, 2, 5, 10, 20, 40, 60, 100, 200, 500, 1000, 2500, 5000, 10000};
+    }
+}
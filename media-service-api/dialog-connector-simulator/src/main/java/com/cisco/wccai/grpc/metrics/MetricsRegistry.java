@@ -0,0 +1,115 @@
+package com.cisco.wccai.grpc.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide registry of the simulator's metrics.
+ *
+ * Metrics are registered once (typically into a static field or a per-method cache) and the returned
+ * {@link Counter}/{@link Histogram} is then recorded directly, so the hot path never touches this registry.
+ * Registering the same name and labels again returns the existing instance.
+ */
+public final class MetricsRegistry {
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<String, MetricFamily> families = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param labels alternating label names and values, e.g. {@code "method", "ProcessCallerInput"}
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, MetricType.COUNTER)
+                .children.computeIfAbsent(labelString(labels), key -> new Counter());
+    }
+
+    public Histogram histogram(String name, String help, long[] upperBounds, String... labels) {
+        return (Histogram) family(name, help, MetricType.HISTOGRAM)
+                .children.computeIfAbsent(labelString(labels), key -> new Histogram(upperBounds));
+    }
+
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, MetricType.GAUGE).children.put(labelString(labels), supplier);
+    }
+
+    public Collection<MetricFamily> getFamilies() {
+        return Collections.unmodifiableCollection(families.values());
+    }
+
+    private MetricFamily family(String name, String help, MetricType type) {
+        MetricFamily family = families.computeIfAbsent(name, key -> new MetricFamily(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelString(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public enum MetricType {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * All series sharing one metric name; children are keyed by their rendered label set.
+     */
+    public static final class MetricFamily {
+        private final String name;
+        private final String help;
+        private final MetricType type;
+        private final Map<String, Object> children = new ConcurrentHashMap<>();
+
+        private MetricFamily(String name, String help, MetricType type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+
+        public MetricType getType() {
+            return type;
+        }
+
+        /**
+         * @return series keyed by rendered labels ({@code name="value",...}); values are
+         * {@link Counter}, {@link Histogram} or {@link DoubleSupplier} depending on {@link #getType()}
+         */
+        public Map<String, Object> getChildren() {
+            return Collections.unmodifiableMap(children);
+        }
+    }
+}
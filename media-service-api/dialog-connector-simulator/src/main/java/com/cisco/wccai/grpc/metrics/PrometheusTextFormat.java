@@ -0,0 +1,74 @@
+package com.cisco.wccai.grpc.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Renders registered metrics in the Prometheus text exposition format (version 0.0.4).
+ */
+public final class PrometheusTextFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private PrometheusTextFormat() {
+    }
+
+    public static String render(Collection<MetricsRegistry.MetricFamily> families) {
+        List<MetricsRegistry.MetricFamily> sorted = new ArrayList<>(families);
+        sorted.sort(Comparator.comparing(MetricsRegistry.MetricFamily::getName));
+        StringBuilder sb = new StringBuilder(8192);
+        for (MetricsRegistry.MetricFamily family : sorted) {
+            sb.append("# HELP ").append(family.getName()).append(' ').append(escapeHelp(family.getHelp())).append('\n');
+            sb.append("# TYPE ").append(family.getName()).append(' ')
+                    .append(family.getType().name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Object> child : family.getChildren().entrySet()) {
+                switch (family.getType()) {
+                    case COUNTER -> sample(sb, family.getName(), child.getKey(), ((Counter) child.getValue()).get());
+                    case GAUGE -> sample(sb, family.getName(), child.getKey(), ((DoubleSupplier) child.getValue()).getAsDouble());
+                    case HISTOGRAM -> histogram(sb, family.getName(), child.getKey(), (Histogram) child.getValue());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void histogram(StringBuilder sb, String name, String labels, Histogram histogram) {
+        long[] bounds = histogram.getUpperBounds();
+        long[] counts = histogram.getBucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = "le=\"" + (i < bounds.length ? Long.toString(bounds[i]) : "+Inf") + '"';
+            sample(sb, name + "_bucket", labels.isEmpty() ? le : labels + ',' + le, cumulative);
+        }
+        // count is derived from the same snapshot as the buckets so the series stay consistent
+        sample(sb, name + "_sum", labels, histogram.getSum());
+        sample(sb, name + "_count", labels, cumulative);
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ');
+        if (value == (long) value) {
+            sb.append((long) value);
+        } else if (Double.isNaN(value)) {
+            sb.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            sb.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -6,19 +6,34 @@ import com.cisco.wcc.ccai.media.v1.Conversationaudioforking;
 import com.cisco.wcc.ccai.media.v1.MediaServiceCommon;
 import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding;
 
-import com.google.cloud.storage.*;
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.server.fork.AckPolicy;
+import com.cisco.wccai.grpc.server.fork.ChannelLayout;
+import com.cisco.wccai.grpc.server.fork.ConversationAnalytics;
+import com.cisco.wccai.grpc.server.fork.ForkPolicies;
+import com.cisco.wccai.grpc.server.fork.IntakeBudget;
+import com.cisco.wccai.grpc.server.fork.RecordingManifest;
+import com.cisco.wccai.grpc.server.fork.RecordingUploader;
+import com.cisco.wccai.grpc.server.fork.RoleAudioBuffer;
+import com.cisco.wccai.grpc.server.fork.RoleAudioBuffers;
+import com.cisco.wccai.grpc.server.fork.SegmentPolicy;
+import com.cisco.wccai.grpc.server.fork.SpeechAnalytics;
+import com.cisco.wccai.grpc.server.fork.StereoAligner;
+import com.cisco.wccai.grpc.server.fork.WavFormat;
 import com.google.protobuf.ByteString;
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding.LINEAR16_VALUE;
 import static com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding.MULAW_VALUE;
@@ -27,25 +42,29 @@ public class ConversationAudioForkServiceImpl extends ConversationAudioGrpc.Conv
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConversationAudioForkServiceImpl.class);
 
-    private final Storage storage;
-    private final String bucketName;
+    private final RecordingUploader uploader;
+    private final RoleAudioBuffers audioBuffers;
+    private final ForkPolicies policies;
+    private final Counter backlogRejected = MetricsRegistry.getInstance().counter("fork_upload_backlog_rejected_total",
+            "Fork streams rejected with RESOURCE_EXHAUSTED because the upload backlog was full");
+    private final Counter budgetRejected = MetricsRegistry.getInstance().counter("fork_intake_budget_rejected_total",
+            "Fork streams rejected with RESOURCE_EXHAUSTED because the intake budget was used up");
 
     /**
-     * Constructor initializes the Google Cloud Storage client and gets the bucket name.
+     * @param uploader stores the recordings in their sink, null if they cannot be saved
      */
-    public ConversationAudioForkServiceImpl() {
+    public ConversationAudioForkServiceImpl(RecordingUploader uploader, RoleAudioBuffers audioBuffers, ForkPolicies policies) {
         LOGGER.info("ConversationAudioForkServiceImpl constructor called");
-        this.storage = StorageOptions.getDefaultInstance().getService();
-
-        if (this.storage == null) {
-            LOGGER.error("Could not get default storage instance. This service will not be able to save audio.");
-        }
-
-        this.bucketName = System.getenv("GCS_BUCKET_NAME");
-        if (this.bucketName == null || this.bucketName.isEmpty()) {
-            LOGGER.error("GCS_BUCKET_NAME environment variable not set. Audio will not be saved.");
-        } else {
-            LOGGER.info("GCS_BUCKET_NAME environment variable set to {}", bucketName);
+        this.uploader = uploader;
+        this.audioBuffers = audioBuffers;
+        this.policies = policies;
+        AckPolicy ackPolicy = policies.getAckPolicy();
+        SegmentPolicy segmentPolicy = policies.getSegmentPolicy();
+        LOGGER.info("Forked audio is buffered in {} mode, chunks are acknowledged {}, recordings are {}, analytics go to {}",
+                audioBuffers.getMode(), ackPolicy.getMode(), policies.getChannelLayout().getLayout(), policies.getSpeechAnalytics().getOutput());
+        if (segmentPolicy.isEnabled()) {
+            LOGGER.info("Forked audio is uploaded in segments of {} s, manifest {}", segmentPolicy.getSegmentSeconds(),
+                    segmentPolicy.isWriteManifest() ? "enabled" : "disabled");
         }
     }
 
@@ -53,7 +72,7 @@ public class ConversationAudioForkServiceImpl extends ConversationAudioGrpc.Conv
     public StreamObserver<Conversationaudioforking.ConversationAudioForkingRequest> streamConversationAudio(
             StreamObserver<Conversationaudioforking.ConversationAudioForkingResponse> responseObserver) {
 
-        if (bucketName == null || storage == null) {
+        if (uploader == null) {
             responseObserver.onError(
                     Status.FAILED_PRECONDITION
                             .withDescription("Server is not configured to save audio streams.")
@@ -61,94 +80,270 @@ public class ConversationAudioForkServiceImpl extends ConversationAudioGrpc.Conv
             );
             return new NoOpStreamObserver();
         }
-        return new AudioStreamToGcsHandler(responseObserver, storage, bucketName);
+        if (uploader.isBacklogFull()) {
+            // Push back until the sink catches up, so the VA Client can retry elsewhere instead of piling up recordings here
+            backlogRejected.increment();
+            LOGGER.warn("Rejecting fork stream: {} recordings are waiting to be uploaded", uploader.getBacklog());
+            responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                    .withDescription("Upload backlog is full, retry later")
+                    .asRuntimeException());
+            return new NoOpStreamObserver();
+        }
+        IntakeBudget intakeBudget = audioBuffers.getIntakeBudget();
+        if (!intakeBudget.hasRoom()) {
+            // A new stream would only add to the audio held, whether or not running ones can be paused
+            budgetRejected.increment();
+            LOGGER.warn("Rejecting fork stream: {} bytes of forked audio are held, the intake budget is {}", intakeBudget.getUsedBytes(),
+                    intakeBudget.getMaxBytes());
+            responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                    .withDescription("Fork intake budget is used up, retry later")
+                    .asRuntimeException());
+            return new NoOpStreamObserver();
+        }
+        AudioStreamToGcsHandler handler = new AudioStreamToGcsHandler(responseObserver, uploader, audioBuffers, policies);
+        if (responseObserver instanceof ServerCallStreamObserver<?> call) {
+            handler.startFlowControl(call, intakeBudget);
+        }
+        return handler;
     }
 
     /**
-     * A dedicated handler that buffers audio streams and saves them as WAV files in GCS.
+     * A dedicated handler that buffers audio streams and saves them as WAV files in the sink (GCS unless configured otherwise).
      */
-    private static class AudioStreamToGcsHandler implements StreamObserver<Conversationaudioforking.ConversationAudioForkingRequest> {
+    static class AudioStreamToGcsHandler implements StreamObserver<Conversationaudioforking.ConversationAudioForkingRequest> {
         private static final int NUM_CHANNELS = 1; // Each roleId is treated as a separate mono channel.
+        private static final String STEREO_RECORDING = "stereo";
 
         private final StreamObserver<Conversationaudioforking.ConversationAudioForkingResponse> responseObserver;
-        private final Storage storage;
-        private final String bucketName;
-
-        private final Map<String, ByteArrayOutputStream> audioBuffers = new HashMap<>();
+        private final RecordingUploader uploader;
+        private final RoleAudioBuffers bufferFactory;
+        private final AckPolicy ackPolicy;
+        private final SegmentPolicy segmentPolicy;
+        private final ChannelLayout channelLayout;
+        private final SpeechAnalytics speechAnalytics;
+
+        private final Map<String, RoleAudioBuffer> audioBuffers = new HashMap<>();
         private String conversationId;
 
         // MODIFIED: These fields will be populated dynamically from the first request.
-        private int sampleRate;
-        private int bitsPerSample;
-        private int audioFormatCode; // e.g., 1 for PCM, 7 for u-law
+        private AudioEncoding encoding;
+        private WavFormat format;
+        // Only when uploading in segments
+        private RecordingManifest manifest;
+        private long segmentBytes;
+        // Only with the STEREO layout: the first two roles, while further ones get mono recordings in audioBuffers
+        private StereoAligner stereo;
+        private long stereoSegmentBytes;
+        // Null unless analytics are enabled
+        private ConversationAnalytics analytics;
+        // Built once per stream, so acknowledging a chunk allocates nothing
+        private Conversationaudioforking.ConversationAudioForkingResponse chunkAck;
+        private int unackedChunks;
+        private long lastAckNanos;
+        // Only with manual flow control: frames requested and not received yet, taken down by onNext and topped up by
+        // whichever thread finds room in the intake budget
+        private ServerCallStreamObserver<?> call;
+        private IntakeBudget intakeBudget;
+        private final AtomicInteger requested = new AtomicInteger();
+        private final AtomicBoolean paused = new AtomicBoolean();
+        // Set once the stream completed, failed or was answered with an error; later callbacks are ignored
+        private volatile boolean closed;
 
-        public AudioStreamToGcsHandler(StreamObserver<Conversationaudioforking.ConversationAudioForkingResponse> responseObserver, Storage storage, String bucketName) {
+        /**
+         * @param uploader null only if the stream is never completed, as in benchmarks
+         */
+        public AudioStreamToGcsHandler(StreamObserver<Conversationaudioforking.ConversationAudioForkingResponse> responseObserver, RecordingUploader uploader,
+                                       RoleAudioBuffers bufferFactory, ForkPolicies policies) {
             this.responseObserver = responseObserver;
-            this.storage = storage;
-            this.bucketName = bucketName;
+            this.uploader = uploader;
+            this.bufferFactory = bufferFactory.forStream();
+            this.ackPolicy = policies.getAckPolicy();
+            this.segmentPolicy = policies.getSegmentPolicy();
+            this.channelLayout = policies.getChannelLayout();
+            this.speechAnalytics = policies.getSpeechAnalytics();
             LOGGER.info("AudioStreamToGcsHandler initialized");
         }
 
+        /**
+         * Pulls frames at most the intake budget's window ahead, and none while it says to pause; must be called before
+         * the service method returns.
+         */
+        void startFlowControl(ServerCallStreamObserver<?> call, IntakeBudget intakeBudget) {
+            this.call = call;
+            this.intakeBudget = intakeBudget;
+            call.disableAutoRequest();
+            requestFrames();
+        }
+
+        private void requestFrames() {
+            if (call == null || closed) {
+                return;
+            }
+            long heldBytes = bufferFactory.getHeldBytes();
+            if (intakeBudget.shouldPause(heldBytes)) {
+                if (paused.compareAndSet(false, true)) {
+                    intakeBudget.pause(this::resume, heldBytes);
+                }
+                return;
+            }
+            int window = intakeBudget.getWindowMessages();
+            int outstanding = requested.get();
+            // Topped up in batches, not per frame
+            if (outstanding <= window / 2 && requested.compareAndSet(outstanding, window)) {
+                call.request(window - outstanding);
+            }
+        }
+
+        private void resume() {
+            paused.set(false);
+            if (closed) {
+                return;
+            }
+            // At least one more frame, so a stream whose own audio holds the budget, or reached its cap, can still complete
+            if (requested.compareAndSet(0, 1)) {
+                call.request(1);
+            }
+            requestFrames();
+        }
+
         @Override
         public void onNext(Conversationaudioforking.ConversationAudioForkingRequest request) {
+            if (closed) {
+                // The call was already answered with an error, or its format is unknown
+                return;
+            }
+            if (call != null) {
+                requested.decrementAndGet();
+                requestFrames();
+            }
             // On the first message, capture the stream's format from the proto message.
             if (this.conversationId == null) {
                 this.conversationId = request.getConversationId();
                 Conversationaudioforking.AudioStream audio = request.getAudio();
-                this.sampleRate = audio.getSampleRateHertz();
 
-                // MODIFIED: Determine format based on the protobuf enum.
+                // MODIFIED: Determine format based on the protobuf enum (u-law: format code 7, 8 bits; PCM: 1, 16 bits).
                 // This makes the handler robust and able to handle multiple encodings.
-                switch (audio.getEncoding()) {
-                    case MULAW:
-                        this.audioFormatCode = 7; // WAV format code for G.711 u-law
-                        this.bitsPerSample = 8;
-                        break;
-                    case LINEAR16:
-                        this.audioFormatCode = 1; // WAV format code for PCM
-                        this.bitsPerSample = 16;
-                        break;
-                    default:
-                        LOGGER.error("Unsupported audio encoding received: {}", audio.getEncoding());
-                        responseObserver.onError(Status.INVALID_ARGUMENT
-                                .withDescription("Unsupported audio encoding: " + audio.getEncoding())
-                                .asRuntimeException());
-                        cleanup();
-                        return; // Stop processing
+                this.encoding = audio.getEncoding();
+                this.format = WavFormat.of(audio.getEncoding(), audio.getSampleRateHertz(), NUM_CHANNELS);
+                if (this.format == null) {
+                    LOGGER.error("Unsupported audio encoding received: {}", audio.getEncoding());
+                    responseObserver.onError(Status.INVALID_ARGUMENT
+                            .withDescription("Unsupported audio encoding: " + audio.getEncoding())
+                            .asRuntimeException());
+                    cleanup();
+                    return; // Stop processing
                 }
                 LOGGER.info("Detected audio stream format: {} Hz, {} bits, format code {}. Ready to receive audio.",
-                        this.sampleRate, this.bitsPerSample, this.audioFormatCode);
+                        format.sampleRate(), format.bitsPerSample(), format.formatCode());
+                this.chunkAck = Conversationaudioforking.ConversationAudioForkingResponse.newBuilder()
+                        .setStatusMessage("Processed chunk for conversationId: " + conversationId)
+                        .build();
+                this.lastAckNanos = System.nanoTime();
+                this.stereo = channelLayout.newAligner(format, bufferFactory);
+                this.analytics = speechAnalytics.newConversation(conversationId, format);
+                if (segmentPolicy.isEnabled()) {
+                    this.manifest = new RecordingManifest(conversationId, format, segmentPolicy.getSegmentSeconds());
+                    this.segmentBytes = segmentPolicy.segmentBytes(format);
+                    if (stereo != null) {
+                        this.stereoSegmentBytes = segmentPolicy.segmentBytes(stereo.getFormat());
+                    }
+                }
             }
 
             String roleId = request.getAudio().getRoleId();
             ByteString audioData = request.getAudio().getAudioData();
 
-            ByteArrayOutputStream buffer = audioBuffers.computeIfAbsent(roleId, k -> new ByteArrayOutputStream());
+            if (!matchesStreamFormat(request.getAudio())) {
+                // Appending it would corrupt the recording; drop the chunk and tell the client, whatever the ack policy
+                LOGGER.warn("Dropping chunk for roleId {} in {} at {} Hz, the stream started as {} at {} Hz", roleId,
+                        request.getAudio().getEncoding(), request.getAudio().getSampleRateHertz(), encoding, format.sampleRate());
+                responseObserver.onNext(Conversationaudioforking.ConversationAudioForkingResponse.newBuilder()
+                        .setStatusMessage("Dropped chunk with a different audio format for conversationId: " + conversationId)
+                        .setErrorCode(MediaServiceCommon.ErrorCode.ERROR_INVALID_AUDIO_FORMAT)
+                        .build());
+                return;
+            }
+
+            if (analytics != null) {
+                analytics.accept(roleId, request.getAudio().getRole(), audioData);
+            }
             try {
-                if (audioData != null && !audioData.isEmpty()) {
-                    audioData.writeTo(buffer);
+                int channel = stereo == null ? -1 : stereo.channelOf(roleId, request.getAudio().getRole());
+                if (channel >= 0) {
+                    appendStereo(channel, request.getAudio());
+                } else {
+                    appendMono(roleId, audioData);
                 }
             } catch (IOException e) {
-                LOGGER.error("Failed to write to in-memory audio buffer for roleId: {}", roleId, e);
+                LOGGER.error("Failed to buffer audio data for roleId: {}", roleId, e);
                 responseObserver.onError(Status.INTERNAL.withDescription("Failed to buffer audio data.").asRuntimeException());
                 cleanup();
+                return;
             }
 
-            responseObserver.onNext(Conversationaudioforking.ConversationAudioForkingResponse.newBuilder()
-                    .setStatusMessage("Processed chunk for conversationId: " + request.getConversationId())
-                    .build());
+            unackedChunks++;
+            long now = System.nanoTime();
+            if (ackPolicy.shouldAck(unackedChunks, now - lastAckNanos)) {
+                responseObserver.onNext(chunkAck);
+                unackedChunks = 0;
+                lastAckNanos = now;
+            }
+        }
+
+        private void appendMono(String roleId, ByteString audioData) throws IOException {
+            RoleAudioBuffer buffer = audioBuffers.get(roleId);
+            if (buffer == null) {
+                buffer = bufferFactory.newBuffer(format);
+                audioBuffers.put(roleId, buffer);
+            }
+            if (audioData != null && !audioData.isEmpty()) {
+                buffer.append(audioData);
+            }
+            if (manifest != null && buffer.getAudioBytes() >= segmentBytes) {
+                // The role's next chunk starts a new segment
+                audioBuffers.remove(roleId);
+                uploadSegment(roleId, buffer, format);
+            }
+        }
+
+        private void appendStereo(int channel, Conversationaudioforking.AudioStream audio) throws IOException {
+            long timestampNanos = audio.hasAudioTimestamp()
+                    ? audio.getAudioTimestamp().getSeconds() * 1_000_000_000L + audio.getAudioTimestamp().getNanos()
+                    : StereoAligner.NO_TIMESTAMP;
+            stereo.append(channel, timestampNanos, audio.getAudioData());
+            if (manifest != null && stereo.getAudioBytes() >= stereoSegmentBytes) {
+                uploadSegment(STEREO_RECORDING, stereo.takeRecording(), stereo.getFormat());
+            }
+        }
+
+        // Later chunks may leave the encoding and sample rate unset; only a different value is a mismatch
+        private boolean matchesStreamFormat(Conversationaudioforking.AudioStream audio) {
+            return (audio.getEncoding() == AudioEncoding.UNSPECIFIED || audio.getEncoding() == encoding)
+                    && (audio.getSampleRateHertz() == 0 || audio.getSampleRateHertz() == format.sampleRate());
         }
 
         @Override
         public void onError(Throwable t) {
+            closed = true;
             LOGGER.error("Client stream produced an error", t);
             cleanup();
         }
 
         @Override
         public void onCompleted() {
+            if (closed) {
+                return;
+            }
+            closed = true;
             LOGGER.info("Client has finished sending audio. Finalizing WAV files for conversationId: {}", conversationId);
+            // The recordings are uploaded in the background, so a slow sink neither delays the acknowledgement nor holds this thread
             finalizeAndUpload();
+            if (ackPolicy.shouldAckOnCompletion(unackedChunks)) {
+                responseObserver.onNext(chunkAck);
+            }
+            if (analytics != null) {
+                publishAnalytics();
+            }
             responseObserver.onCompleted();
         }
 
@@ -158,76 +353,106 @@ public class ConversationAudioForkServiceImpl extends ConversationAudioGrpc.Conv
                 return;
             }
 
-            for (Map.Entry<String, ByteArrayOutputStream> entry : audioBuffers.entrySet()) {
+            for (Map.Entry<String, RoleAudioBuffer> entry : audioBuffers.entrySet()) {
                 String roleId = entry.getKey();
-                byte[] audioData = entry.getValue().toByteArray();
+                RoleAudioBuffer buffer = entry.getValue();
 
-                if (audioData.length == 0) {
+                if (buffer.getAudioBytes() == 0) {
                     LOGGER.info("Skipping upload for roleId '{}' as no audio data was received.", roleId);
+                    buffer.close();
                     continue;
                 }
 
                 try {
-                    // 1. Create the WAV header with the dynamically determined format.
-                    byte[] header = createWavHeader(audioData.length, this.sampleRate, this.bitsPerSample, this.audioFormatCode);
-
-                    // 2. Combine header and audio data.
-                    byte[] wavFileBytes = new byte[header.length + audioData.length];
-                    System.arraycopy(header, 0, wavFileBytes, 0, header.length);
-                    System.arraycopy(audioData, 0, wavFileBytes, header.length, audioData.length);
+                    if (manifest != null) {
+                        uploadSegment(roleId, buffer, format);
+                        continue;
+                    }
+                    // 1. Complete the WAV file: the header is written with the dynamically determined format.
+                    buffer.finish();
 
-                    // 3. Define the GCS object and upload the complete WAV file.
-                    String gcsObjectName = String.format("audio/%s-%s.wav", conversationId, roleId);
-                    BlobId blobId = BlobId.of(bucketName, gcsObjectName);
-                    BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
-                            .setContentType("audio/wav")
-                            .build();
-
-                    storage.create(blobInfo, wavFileBytes);
-                    LOGGER.info("Successfully uploaded gs://{}/{}", bucketName, gcsObjectName);
+                    // 2. Hand the complete WAV file to the uploader, which streams it to the sink and then releases it.
+                    String objectName = String.format("audio/%s-%s.wav", conversationId, roleId);
+                    uploader.upload(objectName, buffer);
 
                 } catch (Exception e) {
-                    LOGGER.error("Failed to create or upload WAV file for roleId: {}", roleId, e);
+                    LOGGER.error("Failed to create WAV file for roleId: {}", roleId, e);
+                    buffer.close();
                 }
             }
-            cleanup();
+            audioBuffers.clear();
+            if (stereo != null) {
+                finalizeStereo();
+            }
+
+            if (manifest != null && segmentPolicy.isWriteManifest() && !manifest.isEmpty()) {
+                // Written once every segment is stored or given up, so it records which ones made it
+                RecordingManifest finished = manifest;
+                finished.whenSettled().thenRun(() ->
+                        uploader.uploadMetadata(finished.getObjectName(), finished.toJson(), RecordingManifest.CONTENT_TYPE));
+            }
         }
 
-        private void cleanup() {
-            audioBuffers.clear();
+        private void publishAnalytics() {
+            byte[] summary = analytics.toJson();
+            if (speechAnalytics.getOutput() == SpeechAnalytics.Output.RESPONSE) {
+                responseObserver.onNext(Conversationaudioforking.ConversationAudioForkingResponse.newBuilder()
+                        .setStatusMessage(new String(summary, StandardCharsets.UTF_8))
+                        .build());
+            } else {
+                uploader.uploadMetadata(analytics.getObjectName(manifest != null), summary, ConversationAnalytics.CONTENT_TYPE);
+            }
+        }
+
+        private void finalizeStereo() {
+            RoleAudioBuffer recording = null;
+            try {
+                recording = stereo.drain();
+                if (recording == null || recording.getAudioBytes() == 0) {
+                    LOGGER.info("Skipping stereo upload as no audio data was left for it.");
+                    stereo.close();
+                    return;
+                }
+                LOGGER.info("Stereo recording has {} on the left and {} on the right channel", stereo.getChannelRoles().get(0),
+                        stereo.getChannelRoles().get(1));
+                if (manifest != null) {
+                    manifest.setStereoChannels(stereo.getChannelRoles());
+                    uploadSegment(STEREO_RECORDING, recording, stereo.getFormat());
+                    return;
+                }
+                recording.finish();
+                uploader.upload(String.format("audio/%s-%s.wav", conversationId, STEREO_RECORDING), recording);
+            } catch (Exception e) {
+                LOGGER.error("Failed to create the stereo WAV file", e);
+                if (recording != null) {
+                    recording.close();
+                }
+                stereo.close();
+            }
         }
 
         /**
-         * Creates a 44-byte WAV file header for a given audio format.
-         *
-         * @param audioDataLength The length of the raw audio data in bytes.
-         * @param sampleRate      The sample rate (e.g., 8000).
-         * @param bitsPerSample   The number of bits per sample (e.g., 8 for u-law, 16 for PCM).
-         * @param formatCode      The WAV format code (1 for PCM, 7 for u-law).
-         * @return A byte array containing the WAV header.
+         * Completes the role's current segment and hands it to the uploader, which releases it once stored.
          */
-        private byte[] createWavHeader(long audioDataLength, int sampleRate, int bitsPerSample, int formatCode) {
-            long totalDataLen = audioDataLength + 36;
-            long byteRate = (long) sampleRate * NUM_CHANNELS * bitsPerSample / 8;
-            int blockAlign = NUM_CHANNELS * bitsPerSample / 8;
-
-            ByteBuffer buffer = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
-
-            buffer.put("RIFF".getBytes());
-            buffer.putInt((int) totalDataLen);
-            buffer.put("WAVE".getBytes());
-            buffer.put("fmt ".getBytes());
-            buffer.putInt(16); // Sub-chunk size for PCM
-            buffer.putShort((short) formatCode);
-            buffer.putShort((short) NUM_CHANNELS);
-            buffer.putInt(sampleRate);
-            buffer.putInt((int) byteRate);
-            buffer.putShort((short) blockAlign);
-            buffer.putShort((short) bitsPerSample);
-            buffer.put("data".getBytes());
-            buffer.putInt((int) audioDataLength);
-
-            return buffer.array();
+        private void uploadSegment(String roleId, RoleAudioBuffer buffer, WavFormat segmentFormat) throws IOException {
+            try {
+                buffer.finish();
+            } catch (IOException e) {
+                buffer.close();
+                throw e;
+            }
+            String objectName = manifest.nextSegmentName(roleId);
+            long audioBytes = buffer.getAudioBytes();
+            manifest.addSegment(roleId, objectName, segmentFormat, audioBytes, uploader.upload(objectName, buffer));
+        }
+
+        void cleanup() {
+            closed = true;
+            audioBuffers.values().forEach(RoleAudioBuffer::close);
+            audioBuffers.clear();
+            if (stereo != null) {
+                stereo.close();
+            }
         }
     }
 
@@ -0,0 +1,229 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.Histogram;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+/*
+    This class wraps a server response stream and only writes to the transport while it reports isReady().
+    Responses produced while the peer is not reading are parked in a bounded per-stream queue, so a stalled
+    media server can never make Netty buffer an unbounded amount of prompt audio for one call.
+*/
+@Slf4j
+public class FlowControlledStreamObserver<T> implements StreamObserver<T> {
+
+    /**
+     * What to do with a response when the per-stream queue is already full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the new response. */
+        DROP,
+        /** Combine the new response with the newest queued one, through the coalescer. */
+        COALESCE,
+        /** Fail the call with RESOURCE_EXHAUSTED. */
+        CANCEL
+    }
+
+    private final ServerCallStreamObserver<T> delegate;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final BinaryOperator<T> coalescer;
+    private final OutboundQueueMetrics metrics;
+
+    private final ArrayDeque<T> pending = new ArrayDeque<>();
+    private boolean completionPending;
+    private boolean terminated;
+    private long notReadySinceNanos = -1;
+    private Runnable onCancelHandler;
+
+    /**
+     * Installs the ready and cancel handlers, so it must be created before the service method returns.
+     *
+     * @param delegate       the transport stream
+     * @param capacity       maximum number of queued responses while the transport is not ready
+     * @param overflowPolicy what to do once {@code capacity} is reached
+     * @param coalescer      combines (queued, new) into one response for {@link OverflowPolicy#COALESCE}; its result
+     *                       must not grow with the number of responses coalesced, or the queue is no longer bounded
+     * @param metrics        the metrics shared by every stream of the same service
+     */
+    public FlowControlledStreamObserver(ServerCallStreamObserver<T> delegate, int capacity, OverflowPolicy overflowPolicy,
+                                        BinaryOperator<T> coalescer, OutboundQueueMetrics metrics) {
+        this.delegate = delegate;
+        this.capacity = Math.max(1, capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.coalescer = coalescer;
+        this.metrics = metrics;
+        delegate.setOnReadyHandler(this::drain);
+        delegate.setOnCancelHandler(this::cancelled);
+    }
+
+    /**
+     * Registers a callback for when the client cancels the call; queued responses are discarded first.
+     */
+    public synchronized void setOnCancelHandler(Runnable onCancelHandler) {
+        this.onCancelHandler = onCancelHandler;
+    }
+
+    @Override
+    public synchronized void onNext(T value) {
+        if (terminated || completionPending) {
+            log.warn("Dropping response written after the stream was closed");
+            metrics.dropped.increment();
+            return;
+        }
+        if (pending.isEmpty() && delegate.isReady()) {
+            delegate.onNext(value);
+            return;
+        }
+        markNotReady();
+        if (pending.size() < capacity) {
+            pending.add(value);
+            metrics.queuedMessages.incrementAndGet();
+            metrics.queued.increment();
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP -> {
+                log.warn("Outbound queue full ({} responses), dropping response", capacity);
+                metrics.dropped.increment();
+            }
+            case COALESCE -> {
+                pending.addLast(coalescer.apply(pending.pollLast(), value));
+                metrics.coalesced.increment();
+            }
+            case CANCEL -> {
+                log.warn("Outbound queue full ({} responses), cancelling the call", capacity);
+                metrics.cancelled.increment();
+                fail(Status.RESOURCE_EXHAUSTED
+                        .withDescription("Client is not reading responses fast enough")
+                        .asRuntimeException());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onError(Throwable throwable) {
+        if (terminated) {
+            return;
+        }
+        fail(throwable);
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+        if (terminated) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            terminated = true;
+            delegate.onCompleted();
+        } else {
+            completionPending = true;
+        }
+    }
+
+    public synchronized boolean isReady() {
+        return !terminated && pending.isEmpty() && delegate.isReady();
+    }
+
+    public synchronized int getQueuedCount() {
+        return pending.size();
+    }
+
+    private synchronized void drain() {
+        while (!pending.isEmpty() && delegate.isReady()) {
+            delegate.onNext(pending.poll());
+            metrics.queuedMessages.decrementAndGet();
+        }
+        if (!pending.isEmpty()) {
+            return;
+        }
+        markReady();
+        if (completionPending && !terminated) {
+            terminated = true;
+            delegate.onCompleted();
+        }
+    }
+
+    private void cancelled() {
+        Runnable handler;
+        synchronized (this) {
+            terminated = true;
+            discardPending();
+            markReady();
+            handler = onCancelHandler;
+        }
+        if (handler != null) {
+            handler.run();
+        }
+    }
+
+    private void fail(Throwable throwable) {
+        terminated = true;
+        discardPending();
+        markReady();
+        delegate.onError(throwable);
+    }
+
+    private void discardPending() {
+        metrics.queuedMessages.addAndGet(-pending.size());
+        metrics.dropped.add(pending.size());
+        pending.clear();
+    }
+
+    private void markNotReady() {
+        if (notReadySinceNanos < 0) {
+            notReadySinceNanos = System.nanoTime();
+        }
+    }
+
+    private void markReady() {
+        if (notReadySinceNanos >= 0) {
+            long notReadyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - notReadySinceNanos);
+            metrics.notReadyTime.record(notReadyMillis);
+            metrics.notReadyTotal.add(notReadyMillis);
+            notReadySinceNanos = -1;
+        }
+    }
+
+    /**
+     * Outbound queue metrics, labelled by service and shared by all of its streams.
+     */
+    public static final class OutboundQueueMetrics {
+        private final AtomicLong queuedMessages = new AtomicLong();
+        private final Counter queued;
+        private final Counter dropped;
+        private final Counter coalesced;
+        private final Counter cancelled;
+        private final Counter notReadyTotal;
+        private final Histogram notReadyTime;
+
+        public OutboundQueueMetrics(String service) {
+            MetricsRegistry registry = MetricsRegistry.getInstance();
+            queued = registry.counter("grpc_server_outbound_queued_total",
+                    "Responses that had to wait because the transport was not ready", "service", service);
+            dropped = registry.counter("grpc_server_outbound_dropped_total",
+                    "Responses discarded on overflow, cancellation or after close", "service", service);
+            coalesced = registry.counter("grpc_server_outbound_coalesced_total",
+                    "Responses merged into an already queued response on overflow", "service", service);
+            cancelled = registry.counter("grpc_server_outbound_overflow_cancelled_total",
+                    "Calls cancelled because the outbound queue overflowed", "service", service);
+            notReadyTotal = registry.counter("grpc_server_outbound_not_ready_ms_total",
+                    "Total time streams spent with queued responses waiting for the transport", "service", service);
+            notReadyTime = registry.histogram("grpc_server_outbound_not_ready_ms",
+                    "Duration of each period a stream waited for the transport to become ready",
+                    Histogram.latencyMillisBuckets(), "service", service);
+            registry.gauge("grpc_server_outbound_queued_messages",
+                    "Responses currently queued across all streams", queuedMessages::get, "service", service);
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package com.cisco.wccai.grpc.server;
 
+import com.cisco.wccai.grpc.metrics.MetricsHttpServer;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.server.fork.AudioSink;
+import com.cisco.wccai.grpc.server.fork.AudioSinks;
+import com.cisco.wccai.grpc.server.fork.ForkPolicies;
+import com.cisco.wccai.grpc.server.fork.RecordingUploader;
+import com.cisco.wccai.grpc.server.fork.RoleAudioBuffers;
+import com.cisco.wccai.grpc.server.interceptors.AsyncAuthorizationServerInterceptor;
 import com.cisco.wccai.grpc.server.interceptors.AuthorizationServerInterceptor;
+import com.cisco.wccai.grpc.server.interceptors.CallLogContextServerInterceptor;
+import com.cisco.wccai.grpc.server.interceptors.ConcurrencyLimitServerInterceptor;
+import com.cisco.wccai.grpc.server.interceptors.MetricsServerInterceptor;
 import com.cisco.wccai.grpc.server.interceptors.ServiceExceptionHandler;
 import com.cisco.wccai.grpc.utils.LoadProperties;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptor;
 import io.grpc.netty.GrpcSslContexts;
 import io.grpc.netty.NettyServerBuilder;
 import io.grpc.protobuf.services.ProtoReflectionService;
@@ -18,19 +30,22 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The type Grpc server.
  * 
- * This server runs two separate gRPC server instances:
+ * This server runs two separate gRPC server instances and a metrics listener:
  * 1. Main server (TLS-protected) for audio services on port 8086 (configurable)
  * 2. Health check server (plaintext) on port 8080 (configurable)
+ * 3. Prometheus metrics endpoint (plaintext HTTP) on port 9090 (configurable)
  */
 public class GrpcServer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GrpcServer.class);
     private static final int PORT = 8086;
     private static final int HEALTH_PORT = 8080;
+    private static final int METRICS_PORT = 9090;
     private static final Properties properties = LoadProperties.loadProperties();
     @Getter @Setter
     private static boolean serverIsRunning;
@@ -87,19 +102,41 @@ public class GrpcServer {
             tlsKeyPath = properties.getProperty("TLS_KEY_PATH");
         }
 
+        // Load the prompt audio once, before the first conversation asks for it
+        LOGGER.info("Prompt audio preloaded: {}", PromptAssetRegistry.getPromptNames());
+
+        // Where service callbacks run: cached pool, virtual threads or inline, plus inline pure-CPU methods while auth never blocks
+        ServerExecutors serverExecutors = ServerExecutors.fromSettings();
+
+        // Netty transport, event loops, allocator and HTTP/2 limits for the main server
+        ServerTransportConfig transportConfig = ServerTransportConfig.fromSettings();
+        NettyServerBuilder mainServerBuilder = transportConfig.newServerBuilder(listeningPort);
+        serverExecutors.apply(mainServerBuilder, isSyncAuth());
+        ConcurrencyLimitServerInterceptor concurrencyLimiter = new ConcurrencyLimitServerInterceptor();
+
+        // Active streams, event-loop lag and heap after GC turn the health status to NOT_SERVING under load
+        LoadMonitor loadMonitor = new LoadMonitor(concurrencyLimiter::getInFlight, transportConfig.getWorkerGroup());
+        HealthCheckImpl healthCheck = new HealthCheckImpl(loadMonitor);
+
         // Start health check server (always plaintext, no authentication)
-        Server healthServer = ServerBuilder.forPort(healthCheckPort)
-                .addService(new com.cisco.wccai.grpc.server.HealthCheckImpl())
+        ServerBuilder<?> healthServerBuilder = ServerBuilder.forPort(healthCheckPort)
+                .addService(healthCheck);
+        serverExecutors.apply(healthServerBuilder, false);
+        Server healthServer = healthServerBuilder
                 .build()
                 .start();
         
         LOGGER.info("✓ Health check server started at port : {} (plaintext, no authentication required)", healthCheckPort);
 
-        Server mainServer;
-        
+        // Prometheus scrape endpoint, plaintext like the health server
+        MetricsHttpServer metricsServer = MetricsHttpServer.start(LoadProperties.getIntSetting("METRICS_PORT", METRICS_PORT),
+                MetricsRegistry.getInstance());
+
+        boolean tlsEnabled = tlsCertPath != null && !tlsCertPath.isEmpty() &&
+                tlsKeyPath != null && !tlsKeyPath.isEmpty();
+
         // Check if TLS is configured for main server
-        if (tlsCertPath != null && !tlsCertPath.isEmpty() && 
-            tlsKeyPath != null && !tlsKeyPath.isEmpty()) {
+        if (tlsEnabled) {
             
             LOGGER.info("TLS enabled - Certificate: {}, Key: {}", tlsCertPath, tlsKeyPath);
             
@@ -118,48 +155,101 @@ public class GrpcServer {
             SslContext sslContext = GrpcSslContexts.forServer(certChainFile, privateKeyFile)
                     .build();
             
-            // Create secure main server with TLS (audio services only, no health check)
-            mainServer = NettyServerBuilder.forPort(listeningPort)
-                    .sslContext(sslContext)
-                    .intercept(new ServiceExceptionHandler())
-                    .addService(new VoiceVAImpl())
-                    .addService(new ConversationAudioForkServiceImpl())
-                    .addService(ProtoReflectionService.newInstance())
-                    .intercept(new AuthorizationServerInterceptor())
-                    .build()
-                    .start();
-            
-            LOGGER.info("✓ Secure gRPC server started at port : {} with TLS/SSL encryption", listeningPort);
-            
+            // Secure main server with TLS (audio services only, no health check)
+            mainServerBuilder.sslContext(sslContext);
         } else {
             // TLS not configured - start without encryption (NOT RECOMMENDED FOR PRODUCTION)
             LOGGER.warn("⚠️  WARNING: TLS is NOT configured! Main server will run WITHOUT encryption.");
             LOGGER.warn("⚠️  This is a SECURITY RISK and should ONLY be used for local development.");
             LOGGER.warn("⚠️  Set TLS_CERT_PATH and TLS_KEY_PATH environment variables or config.properties to enable TLS.");
-            
-            mainServer = ServerBuilder.forPort(listeningPort)
-                    .intercept(new ServiceExceptionHandler())
-                    .addService(new VoiceVAImpl())
-                    .addService(new ConversationAudioForkServiceImpl())
-                    .addService(ProtoReflectionService.newInstance())
-                    .intercept(new AuthorizationServerInterceptor())
-                    .build()
-                    .start();
-            
+        }
+
+        // Forked recordings are stored in the background after their streams are acknowledged; kept here to drain at shutdown
+        AudioSink forkSink = AudioSinks.fromSettings();
+        RecordingUploader forkUploader = forkSink == null ? null : RecordingUploader.fromSettings(forkSink);
+        ConversationAudioForkServiceImpl forkService = new ConversationAudioForkServiceImpl(forkUploader, RoleAudioBuffers.fromSettings(),
+                ForkPolicies.fromSettings());
+        long forkDrainMillis = LoadProperties.getLongSetting("FORK_UPLOAD_DRAIN_MS", 20000);
+
+        Server mainServer = addMainServices(mainServerBuilder, authorizationInterceptorFromSettings(), concurrencyLimiter, forkService)
+                .build()
+                .start();
+
+        if (tlsEnabled) {
+            LOGGER.info("✓ Secure gRPC server started at port : {} with TLS/SSL encryption", listeningPort);
+        } else {
             LOGGER.info("server started at port : {} (UNENCRYPTED)", listeningPort);
         }
 
         serverIsRunning = true;
+        healthCheck.publishStatus();
+        loadMonitor.start();
 
         Runtime.getRuntime().addShutdownHook(new Thread( () -> {
             LOGGER.info("Received Shutdown Request");
+            serverIsRunning = false;
+            healthCheck.publishStatus();
+            loadMonitor.shutdown();
             mainServer.shutdown();
             healthServer.shutdown();
+            metricsServer.stop();
+            // Done here rather than after main's awaitTermination: the JVM halts as soon as the shutdown hooks return
+            if (forkUploader != null) {
+                drainForkUploads(mainServer, forkUploader, forkDrainMillis);
+            }
             LOGGER.info("Successfully stopped both servers");
-            serverIsRunning = false;
         }));
 
         // await for Termination of Program
         mainServer.awaitTermination();
+        transportConfig.shutdown();
+        serverExecutors.shutdown();
+    }
+
+    /**
+     * Waits, within one timeout, for the streams still running to complete and for the recordings handed off to be
+     * stored, since their clients were already acknowledged; whatever is left is logged as abandoned.
+     */
+    private static void drainForkUploads(Server mainServer, RecordingUploader forkUploader, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            if (!mainServer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Streams still running after {} ms, their recordings are not stored", timeoutMillis);
+                mainServer.shutdownNow();
+            }
+            forkUploader.shutdown(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while draining fork uploads");
+        }
+    }
+
+    /**
+     * Adds the audio services and the main server's interceptor chain, so benchmarks can run calls through exactly
+     * the chain the simulator uses.
+     */
+    public static NettyServerBuilder addMainServices(NettyServerBuilder serverBuilder, ServerInterceptor authorizationInterceptor,
+                                                     ConcurrencyLimitServerInterceptor concurrencyLimiter,
+                                                     ConversationAudioForkServiceImpl forkService) {
+        return serverBuilder
+                .intercept(new ServiceExceptionHandler())
+                .addService(new VoiceVAImpl())
+                .addService(forkService)
+                .addService(ProtoReflectionService.newInstance())
+                .intercept(authorizationInterceptor)
+                .intercept(new CallLogContextServerInterceptor())
+                .intercept(concurrencyLimiter)
+                .intercept(new MetricsServerInterceptor());
+    }
+
+    /**
+     * ASYNC validates tokens on their own threads and defers the call; SYNC validates inline in interceptCall.
+     */
+    public static ServerInterceptor authorizationInterceptorFromSettings() {
+        return isSyncAuth() ? new AuthorizationServerInterceptor() : new AsyncAuthorizationServerInterceptor();
+    }
+
+    private static boolean isSyncAuth() {
+        return "SYNC".equalsIgnoreCase(LoadProperties.getSetting("AUTH_MODE", "ASYNC"));
     }
 }
@@ -2,40 +2,101 @@ package com.cisco.wccai.grpc.server;
 
 import com.cisco.wcc.ccai.v1.HealthOuterClass;
 import com.cisco.wcc.ccai.v1.HealthGrpc;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Health service of the simulator. The status is SERVING while the main server runs and the
+ * {@link LoadMonitor} does not report saturation; Watch streams push every change of that status,
+ * so a load balancer stops routing new calls to a saturated instance without polling.
+ */
 public class HealthCheckImpl extends HealthGrpc.HealthImplBase {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HealthCheckImpl.class);
 
+    private final LoadMonitor loadMonitor;
+    private final Set<ServerCallStreamObserver<HealthOuterClass.HealthCheckResponse>> watchers = ConcurrentHashMap.newKeySet();
+    private HealthOuterClass.HealthCheckResponse.ServingStatus publishedStatus;
+
+    public HealthCheckImpl() {
+        this(null);
+    }
+
+    /**
+     * @param loadMonitor load signals that can turn the status to NOT_SERVING, or null to only follow the server state
+     */
+    public HealthCheckImpl(LoadMonitor loadMonitor) {
+        this.loadMonitor = loadMonitor;
+        if (loadMonitor != null) {
+            loadMonitor.addListener(this::publishStatus);
+        }
+    }
+
     @Override
     public void check(HealthOuterClass.HealthCheckRequest request, StreamObserver<HealthOuterClass.HealthCheckResponse> responseObserver) {
         LOGGER.info("Health check request received for service: {}", request.getService());
-        
+
         // Always respond to health checks, regardless of service field
-        HealthOuterClass.HealthCheckResponse.ServingStatus status;
-        
-        if (GrpcServer.isServerIsRunning()) {
-            status = HealthOuterClass.HealthCheckResponse.ServingStatus.SERVING;
-            LOGGER.info("Health check response sent: SERVING");
-        } else {
-            status = HealthOuterClass.HealthCheckResponse.ServingStatus.NOT_SERVING;
-            LOGGER.info("Health check response sent: NOT_SERVING");
-        }
-        
-        HealthOuterClass.HealthCheckResponse response = HealthOuterClass.HealthCheckResponse.newBuilder()
-                .setStatus(status)
-                .build();
-        
-        responseObserver.onNext(response);
+        HealthOuterClass.HealthCheckResponse.ServingStatus status = currentStatus();
+        LOGGER.info("Health check response sent: {}", status);
+
+        responseObserver.onNext(toResponse(status));
         responseObserver.onCompleted();
     }
 
-
     @Override
     public void watch(HealthOuterClass.HealthCheckRequest request, StreamObserver<HealthOuterClass.HealthCheckResponse> responseObserver) {
-        super.watch(request, responseObserver);
+        LOGGER.info("Health watch started for service: {}", request.getService());
+        ServerCallStreamObserver<HealthOuterClass.HealthCheckResponse> watcher =
+                (ServerCallStreamObserver<HealthOuterClass.HealthCheckResponse>) responseObserver;
+        watcher.setOnCancelHandler(() -> {
+            watchers.remove(watcher);
+            LOGGER.info("Health watch cancelled, {} watchers left", watchers.size());
+        });
+        synchronized (this) {
+            // The current status goes out first, then only changes.
+            watcher.onNext(toResponse(currentStatus()));
+            watchers.add(watcher);
+        }
+    }
+
+    /**
+     * Re-evaluates the status and pushes it to every Watch stream if it changed.
+     * Called by the load monitor and by GrpcServer when the server starts or stops.
+     */
+    public synchronized void publishStatus() {
+        HealthOuterClass.HealthCheckResponse.ServingStatus status = currentStatus();
+        if (status == publishedStatus) {
+            return;
+        }
+        publishedStatus = status;
+        LOGGER.info("Health status changed to {}, notifying {} watchers", status, watchers.size());
+        HealthOuterClass.HealthCheckResponse response = toResponse(status);
+        for (ServerCallStreamObserver<HealthOuterClass.HealthCheckResponse> watcher : watchers) {
+            try {
+                watcher.onNext(response);
+            } catch (RuntimeException e) {
+                // the call was cancelled between the status change and this write
+                watchers.remove(watcher);
+            }
+        }
+    }
+
+    private HealthOuterClass.HealthCheckResponse.ServingStatus currentStatus() {
+        if (!GrpcServer.isServerIsRunning() || (loadMonitor != null && loadMonitor.isSaturated())) {
+            return HealthOuterClass.HealthCheckResponse.ServingStatus.NOT_SERVING;
+        }
+        return HealthOuterClass.HealthCheckResponse.ServingStatus.SERVING;
+    }
+
+    private static HealthOuterClass.HealthCheckResponse toResponse(HealthOuterClass.HealthCheckResponse.ServingStatus status) {
+        return HealthOuterClass.HealthCheckResponse.newBuilder()
+                .setStatus(status)
+                .build();
     }
 }
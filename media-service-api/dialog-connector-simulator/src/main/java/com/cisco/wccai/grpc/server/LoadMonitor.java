@@ -0,0 +1,193 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Samples the signals that tell whether this instance can take more calls and flags it as saturated
+ * once any of them crosses its threshold:
+ * <ul>
+ *   <li>LOAD_MAX_ACTIVE_STREAMS - streaming calls in flight</li>
+ *   <li>LOAD_MAX_EVENT_LOOP_LAG_MS - how long a task waits before a Netty worker event loop runs it</li>
+ *   <li>LOAD_MAX_HEAP_AFTER_GC_PERCENT - old generation occupancy right after the last collection</li>
+ * </ul>
+ * A threshold of 0 disables that signal. To avoid flapping, the instance only counts as recovered after
+ * LOAD_RECOVERY_SAMPLES consecutive samples with every signal below LOAD_RECOVERY_RATIO of its threshold.
+ */
+public final class LoadMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadMonitor.class);
+
+    private final IntSupplier activeStreams;
+    private final List<EventExecutor> eventLoops = new ArrayList<>();
+    private final AtomicLong[] probeSubmittedAt;
+    private final AtomicLong probeLagNanos = new AtomicLong();
+    private final List<MemoryPoolMXBean> tenuredPools = new ArrayList<>();
+    private final int maxActiveStreams;
+    private final long maxEventLoopLagMillis;
+    private final int maxHeapAfterGcPercent;
+    private final double recoveryRatio;
+    private final int recoverySamples;
+    private final long sampleIntervalMillis;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService sampler;
+
+    private volatile boolean saturated;
+    private volatile long eventLoopLagMillis;
+    private volatile double heapAfterGcPercent;
+    private int samplesBelowRecovery;
+
+    /**
+     * @param activeStreams the number of streaming calls in flight
+     * @param workerGroup   the main server's worker event loops, or null to skip the lag signal
+     */
+    public LoadMonitor(IntSupplier activeStreams, EventLoopGroup workerGroup) {
+        this.activeStreams = activeStreams;
+        if (workerGroup != null) {
+            workerGroup.forEach(eventLoops::add);
+        }
+        this.probeSubmittedAt = new AtomicLong[eventLoops.size()];
+        for (int i = 0; i < probeSubmittedAt.length; i++) {
+            probeSubmittedAt[i] = new AtomicLong();
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // Young pools are nearly empty or full after every collection and say nothing about a leak or overload.
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    && !pool.getName().contains("Eden") && !pool.getName().contains("Survivor")) {
+                tenuredPools.add(pool);
+            }
+        }
+        this.maxActiveStreams = LoadProperties.getIntSetting("LOAD_MAX_ACTIVE_STREAMS", 4000);
+        this.maxEventLoopLagMillis = LoadProperties.getLongSetting("LOAD_MAX_EVENT_LOOP_LAG_MS", 200);
+        this.maxHeapAfterGcPercent = LoadProperties.getIntSetting("LOAD_MAX_HEAP_AFTER_GC_PERCENT", 85);
+        this.recoveryRatio = Math.min(1.0, LoadProperties.getDoubleSetting("LOAD_RECOVERY_RATIO", 0.8));
+        this.recoverySamples = Math.max(1, LoadProperties.getIntSetting("LOAD_RECOVERY_SAMPLES", 3));
+        this.sampleIntervalMillis = Math.max(100, LoadProperties.getLongSetting("LOAD_SAMPLE_INTERVAL_MS", 1000));
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("load_event_loop_lag_ms", "Worst delay before a worker event loop ran the last probe", () -> eventLoopLagMillis);
+        registry.gauge("load_heap_after_gc_percent", "Old generation occupancy after the last collection", () -> heapAfterGcPercent);
+        registry.gauge("load_saturated", "1 while the instance reports NOT_SERVING because of load", () -> saturated ? 1 : 0);
+    }
+
+    public void start() {
+        sampler.scheduleWithFixedDelay(this::sample, sampleIntervalMillis, sampleIntervalMillis, TimeUnit.MILLISECONDS);
+        LOGGER.info("Load monitor started: max active streams {}, max event-loop lag {} ms, max heap after GC {}%, "
+                        + "recovery below {} of each threshold for {} samples, sampled every {} ms",
+                maxActiveStreams, maxEventLoopLagMillis, maxHeapAfterGcPercent, recoveryRatio, recoverySamples, sampleIntervalMillis);
+    }
+
+    public void shutdown() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * Registers a callback run on the sampler thread whenever {@link #isSaturated()} changes.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    private void sample() {
+        try {
+            eventLoopLagMillis = probeEventLoops();
+            heapAfterGcPercent = heapAfterGc();
+            int streams = activeStreams.getAsInt();
+
+            boolean overThreshold = exceeds(streams, maxActiveStreams, 1.0)
+                    || exceeds(eventLoopLagMillis, maxEventLoopLagMillis, 1.0)
+                    || exceeds(heapAfterGcPercent, maxHeapAfterGcPercent, 1.0);
+            boolean belowRecovery = !exceeds(streams, maxActiveStreams, recoveryRatio)
+                    && !exceeds(eventLoopLagMillis, maxEventLoopLagMillis, recoveryRatio)
+                    && !exceeds(heapAfterGcPercent, maxHeapAfterGcPercent, recoveryRatio);
+
+            if (!saturated && overThreshold) {
+                LOGGER.warn("Saturated, reporting NOT_SERVING: {} active streams, {} ms event-loop lag, {}% heap after GC",
+                        streams, eventLoopLagMillis, Math.round(heapAfterGcPercent));
+                samplesBelowRecovery = 0;
+                changeState(true);
+            } else if (saturated) {
+                samplesBelowRecovery = belowRecovery ? samplesBelowRecovery + 1 : 0;
+                if (samplesBelowRecovery >= recoverySamples) {
+                    LOGGER.info("Load recovered, reporting SERVING: {} active streams, {} ms event-loop lag, {}% heap after GC",
+                            streams, eventLoopLagMillis, Math.round(heapAfterGcPercent));
+                    changeState(false);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Load sampling failed", e);
+        }
+    }
+
+    private void changeState(boolean saturated) {
+        this.saturated = saturated;
+        listeners.forEach(Runnable::run);
+    }
+
+    private static boolean exceeds(double value, double threshold, double ratio) {
+        return threshold > 0 && value > threshold * ratio;
+    }
+
+    // Posts a timestamped no-op to each event loop; a probe that has not run yet counts with its age so far.
+    private long probeEventLoops() {
+        long now = System.nanoTime();
+        long worstNanos = probeLagNanos.getAndSet(0);
+        for (int i = 0; i < eventLoops.size(); i++) {
+            AtomicLong submittedAt = probeSubmittedAt[i];
+            long pending = submittedAt.get();
+            if (pending != 0) {
+                worstNanos = Math.max(worstNanos, now - pending);
+                continue;
+            }
+            EventExecutor eventLoop = eventLoops.get(i);
+            if (eventLoop.isShuttingDown()) {
+                continue;
+            }
+            submittedAt.set(now);
+            eventLoop.execute(() -> {
+                probeLagNanos.accumulateAndGet(System.nanoTime() - now, Math::max);
+                submittedAt.set(0);
+            });
+        }
+        return TimeUnit.NANOSECONDS.toMillis(worstNanos);
+    }
+
+    private double heapAfterGc() {
+        long used = 0;
+        long max = 0;
+        for (MemoryPoolMXBean pool : tenuredPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0) {
+                used += usage.getUsed();
+                max += usage.getMax();
+            }
+        }
+        return max == 0 ? 0 : 100.0 * used / max;
+    }
+}
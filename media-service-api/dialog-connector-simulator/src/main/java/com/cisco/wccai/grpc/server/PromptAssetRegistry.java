@@ -0,0 +1,119 @@
+package com.cisco.wccai.grpc.server;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/*
+    This class loads every prompt under the classpath "audio/" directory exactly once and keeps it as an immutable ByteString,
+    so building a prompt response never goes back to the classloader or copies the audio again.
+*/
+@Slf4j
+public final class PromptAssetRegistry {
+
+    private static final String AUDIO_DIRECTORY = "audio/";
+    private static final String WAV_EXTENSION = ".wav";
+
+    private static final Map<String, ByteString> PROMPTS = loadPrompts();
+
+    private PromptAssetRegistry() {
+    }
+
+    /**
+     * Returns the preloaded audio for the given file name.
+     *
+     * @param fileName the prompt file name relative to the "audio/" directory, e.g. "welcome.wav"
+     * @return the prompt audio, or {@link ByteString#EMPTY} if no such prompt was packaged
+     */
+    public static ByteString getAudio(String fileName) {
+        ByteString audio = PROMPTS.get(fileName);
+        if (audio == null) {
+            log.warn("Prompt audio not found in registry: {}", fileName);
+            return ByteString.EMPTY;
+        }
+        return audio;
+    }
+
+    public static Set<String> getPromptNames() {
+        return PROMPTS.keySet();
+    }
+
+    private static Map<String, ByteString> loadPrompts() {
+        Map<String, ByteString> prompts = new HashMap<>();
+        ClassLoader classLoader = PromptAssetRegistry.class.getClassLoader();
+        try {
+            Enumeration<URL> directories = classLoader.getResources(AUDIO_DIRECTORY);
+            while (directories.hasMoreElements()) {
+                URL directory = directories.nextElement();
+                for (String fileName : listWavFiles(directory)) {
+                    prompts.computeIfAbsent(fileName, name -> readPrompt(classLoader, name));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error scanning prompt audio directory: {}", AUDIO_DIRECTORY, e);
+        }
+        log.info("Loaded {} prompt audio files into the registry: {}", prompts.size(), prompts.keySet());
+        return Collections.unmodifiableMap(prompts);
+    }
+
+    private static List<String> listWavFiles(URL directory) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        if ("jar".equals(directory.getProtocol())) {
+            JarFile jarFile = ((JarURLConnection) directory.openConnection()).getJarFile();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.startsWith(AUDIO_DIRECTORY) && name.endsWith(WAV_EXTENSION)
+                        && name.indexOf('/', AUDIO_DIRECTORY.length()) < 0) {
+                    fileNames.add(name.substring(AUDIO_DIRECTORY.length()));
+                }
+            }
+        } else if ("file".equals(directory.getProtocol())) {
+            Path path;
+            try {
+                path = Paths.get(directory.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid prompt audio directory: " + directory, e);
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + WAV_EXTENSION)) {
+                files.forEach(file -> fileNames.add(file.getFileName().toString()));
+            }
+        } else {
+            log.warn("Unsupported classpath location for prompt audio: {}", directory);
+        }
+        return fileNames;
+    }
+
+    private static ByteString readPrompt(ClassLoader classLoader, String fileName) {
+        try (InputStream inputStream = classLoader.getResourceAsStream(AUDIO_DIRECTORY + fileName)) {
+            if (inputStream == null) {
+                log.error("Prompt audio disappeared from classpath: {}", fileName);
+                return ByteString.EMPTY;
+            }
+            // The array is never handed out again, so it can back the ByteString without a defensive copy.
+            return UnsafeByteOperations.unsafeWrap(inputStream.readAllBytes());
+        } catch (IOException e) {
+            log.error("Error reading audio content from file: {}", fileName, e);
+            return ByteString.EMPTY;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVAResponse;
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.Histogram;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+    This class streams a prompt as CHUNK responses at real-time pace followed by an empty FINAL response.
+    All conversations share one scheduler: each playout is a task that re-arms itself for its next frame,
+    so there is no thread per stream and every message only references a slice of the preloaded prompt.
+*/
+@Slf4j
+public final class PromptPlayoutEngine {
+
+    private static final int MIN_CHUNK_MS = 20;
+    private static final int MAX_CHUNK_MS = 200;
+    private static final int MIN_CHUNK_BYTES = 100; // smallest CHUNK audio the VA Client accepts
+    private static final int CHUNK_MS = Math.max(MIN_CHUNK_MS,
+            Math.min(MAX_CHUNK_MS, LoadProperties.getIntSetting("PROMPT_CHUNK_MS", 100)));
+    private static final int PREBUFFER_CHUNKS = Math.max(1, LoadProperties.getIntSetting("PROMPT_PREBUFFER_CHUNKS", 2));
+    private static final int PLAYOUT_THREADS = Math.max(1, LoadProperties.getIntSetting("PROMPT_PLAYOUT_THREADS", 1));
+
+    private static final PromptPlayoutEngine INSTANCE = new PromptPlayoutEngine();
+
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger activePlayouts = new AtomicInteger();
+    private final Histogram startupOffset;
+    private final Histogram pacingJitter;
+    private final Counter underruns;
+    private final Counter chunksSent;
+
+    private PromptPlayoutEngine() {
+        AtomicInteger threadCount = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(PLAYOUT_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "prompt-playout-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        startupOffset = registry.histogram("prompt_playout_startup_offset_ms",
+                "Delay between a playout being requested and its first CHUNK being written", Histogram.latencyMillisBuckets());
+        pacingJitter = registry.histogram("prompt_playout_jitter_ms",
+                "How late each CHUNK was written relative to its real-time schedule", Histogram.latencyMillisBuckets());
+        underruns = registry.counter("prompt_playout_underruns_total",
+                "CHUNKs written after the audio already sent had finished playing");
+        chunksSent = registry.counter("prompt_playout_chunks_total", "CHUNK responses written");
+        registry.gauge("prompt_playout_active", "Prompts currently being played out", activePlayouts::get);
+        log.info("Prompt playout engine started with {} ms chunks, {} prebuffered chunks, {} thread(s)",
+                CHUNK_MS, PREBUFFER_CHUNKS, PLAYOUT_THREADS);
+    }
+
+    public static PromptPlayoutEngine getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts playing a prompt. The first CHUNK is written immediately; the rest follow on the shared scheduler.
+     *
+     * @param wavAudio      the prompt as a WAV file; the header is stripped since CHUNK audio must not carry one
+     * @param chunkResponse builds the CHUNK response around one slice of audio
+     * @param finalResponse written once all audio has been sent
+     * @param observer      the response stream, which must tolerate writes from the scheduler thread
+     * @return a handle that completes after the FINAL response has been written, or when cancelled
+     */
+    public Playout play(ByteString wavAudio, Function<ByteString, VoiceVAResponse> chunkResponse,
+                        VoiceVAResponse finalResponse, StreamObserver<VoiceVAResponse> observer) {
+        Playout playout = new Playout(WavAudio.parse(wavAudio), chunkResponse, finalResponse, observer);
+        activePlayouts.incrementAndGet();
+        playout.run();
+        return playout;
+    }
+
+    /**
+     * One prompt being played to one stream. Ticks are serialized by rescheduling, never run concurrently.
+     */
+    public final class Playout implements Runnable {
+        private final ByteString audio;
+        private final int chunkBytes;
+        private final Function<ByteString, VoiceVAResponse> chunkResponse;
+        private final VoiceVAResponse finalResponse;
+        private final StreamObserver<VoiceVAResponse> observer;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final long requestedAtNanos = System.nanoTime();
+
+        private long startedAtNanos;
+        private int nextChunk;
+        private int position;
+        private volatile boolean cancelled;
+
+        private Playout(WavAudio wav, Function<ByteString, VoiceVAResponse> chunkResponse,
+                        VoiceVAResponse finalResponse, StreamObserver<VoiceVAResponse> observer) {
+            this.audio = wav.data;
+            // Keep whole sample frames in every chunk.
+            int bytesPerChunk = (int) ((long) wav.bytesPerSecond * CHUNK_MS / 1000);
+            this.chunkBytes = Math.max(wav.blockAlign, bytesPerChunk - bytesPerChunk % wav.blockAlign);
+            this.chunkResponse = chunkResponse;
+            this.finalResponse = finalResponse;
+            this.observer = observer;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                if (position < audio.size()) {
+                    writeChunk(System.nanoTime());
+                }
+                if (position < audio.size()) {
+                    long delayNanos = targetNanos(nextChunk) - System.nanoTime();
+                    scheduler.schedule(this, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+                    return;
+                }
+                observer.onNext(finalResponse);
+                finish();
+            } catch (RuntimeException e) {
+                log.error("Prompt playout failed after {} chunks", nextChunk, e);
+                finish();
+            }
+        }
+
+        private void writeChunk(long now) {
+            if (nextChunk == 0) {
+                startedAtNanos = now;
+                startupOffset.record(TimeUnit.NANOSECONDS.toMillis(now - requestedAtNanos));
+            } else {
+                long lateNanos = now - targetNanos(nextChunk);
+                pacingJitter.record(TimeUnit.NANOSECONDS.toMillis(Math.max(0, lateNanos)));
+                // The client has played everything sent so far once chunk N's own start time has passed.
+                if (now > startedAtNanos + TimeUnit.MILLISECONDS.toNanos((long) nextChunk * CHUNK_MS)) {
+                    underruns.increment();
+                }
+            }
+            int end = position + chunkBytes;
+            if (audio.size() - end < MIN_CHUNK_BYTES) {
+                // fold a short tail into this chunk rather than sending an undersized one
+                end = audio.size();
+            }
+            observer.onNext(chunkResponse.apply(audio.substring(position, end)));
+            position = end;
+            chunksSent.increment();
+            nextChunk++;
+        }
+
+        // The first PREBUFFER_CHUNKS go out back to back, after that one chunk per CHUNK_MS.
+        private long targetNanos(int chunk) {
+            long slot = Math.max(0, chunk - PREBUFFER_CHUNKS + 1);
+            return startedAtNanos + TimeUnit.MILLISECONDS.toNanos(slot * CHUNK_MS);
+        }
+
+        /**
+         * Stops the playout without sending the FINAL response, e.g. when the call was cancelled.
+         */
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                finish();
+            }
+        }
+
+        public CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+
+        private void finish() {
+            if (completion.complete(null)) {
+                activePlayouts.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The data chunk of a WAV file and the format needed to pace it, without copying the audio.
+     */
+    private record WavAudio(ByteString data, int bytesPerSecond, int blockAlign) {
+
+        private static final int DEFAULT_BYTES_PER_SECOND = 8000; // 8 kHz, 8-bit u-law
+
+        static WavAudio parse(ByteString wav) {
+            if (wav.size() < 12 || !"RIFF".equals(wav.substring(0, 4).toStringUtf8())
+                    || !"WAVE".equals(wav.substring(8, 12).toStringUtf8())) {
+                return new WavAudio(wav, DEFAULT_BYTES_PER_SECOND, 1);
+            }
+            int bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+            int blockAlign = 1;
+            int position = 12;
+            while (position + 8 <= wav.size()) {
+                String chunkId = wav.substring(position, position + 4).toStringUtf8();
+                int chunkSize = wav.substring(position + 4, position + 8).asReadOnlyByteBuffer()
+                        .order(ByteOrder.LITTLE_ENDIAN).getInt();
+                int body = position + 8;
+                if ("fmt ".equals(chunkId) && body + 16 <= wav.size()) {
+                    ByteBuffer fmt = wav.substring(body, body + 16).asReadOnlyByteBuffer().slice().order(ByteOrder.LITTLE_ENDIAN);
+                    bytesPerSecond = fmt.getInt(8);
+                    blockAlign = Math.max(1, fmt.getShort(12));
+                } else if ("data".equals(chunkId)) {
+                    int end = chunkSize < 0 ? wav.size() : (int) Math.min(wav.size(), (long) body + chunkSize);
+                    return new WavAudio(wav.substring(body, end), bytesPerSecond, blockAlign);
+                }
+                if (chunkSize < 0) {
+                    break;
+                }
+                position = body + chunkSize + (chunkSize & 1);
+            }
+            return new WavAudio(ByteString.EMPTY, bytesPerSecond, blockAlign);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wcc.ccai.v1.HealthGrpc;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Metadata;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Chooses where gRPC runs service callbacks (StreamObserver.onNext, unary methods, ...).
+ *
+ * <ul>
+ *   <li>CACHED - gRPC's default cached thread pool</li>
+ *   <li>VIRTUAL - one virtual thread per task (Java 21+), falls back to CACHED on older runtimes</li>
+ *   <li>DIRECT - run every callback on the Netty event loop; only safe if nothing blocks</li>
+ * </ul>
+ *
+ * Whatever the executor, gRPC serializes the callbacks of one call, so each stream still sees its
+ * messages in order. Methods listed in GRPC_DIRECT_EXECUTOR_METHODS always run inline on the
+ * event loop, interceptors included, which by default is only Health/Check on the health server. A
+ * method of the main server such as ListVirtualAgents only runs inline while none of its interceptors
+ * block: with SYNC token validation a JWKS fetch would stall every stream of that event loop.
+ */
+public final class ServerExecutors {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerExecutors.class);
+
+    public enum ExecutorMode {
+        CACHED, VIRTUAL, DIRECT
+    }
+
+    public static final Set<String> DEFAULT_DIRECT_METHODS = Set.of(HealthGrpc.getCheckMethod().getFullMethodName());
+
+    @Getter
+    private final ExecutorMode mode;
+    private final Set<String> directMethods;
+    private final ExecutorService executor;
+
+    private ServerExecutors(ExecutorMode requestedMode, Set<String> directMethods) {
+        ExecutorService virtualExecutor = requestedMode == ExecutorMode.VIRTUAL ? newVirtualThreadPerTaskExecutor() : null;
+        this.mode = requestedMode == ExecutorMode.VIRTUAL && virtualExecutor == null ? ExecutorMode.CACHED : requestedMode;
+        this.executor = virtualExecutor;
+        this.directMethods = directMethods;
+    }
+
+    public static ServerExecutors of(ExecutorMode mode, Set<String> directMethods) {
+        return new ServerExecutors(mode, directMethods);
+    }
+
+    public static ServerExecutors fromSettings() {
+        ExecutorMode mode = LoadProperties.getEnumSetting("GRPC_EXECUTOR_MODE", ExecutorMode.class, ExecutorMode.CACHED);
+        String methods = LoadProperties.getSetting("GRPC_DIRECT_EXECUTOR_METHODS", null);
+        Set<String> directMethods = methods == null ? DEFAULT_DIRECT_METHODS : Arrays.stream(methods.split(","))
+                .map(String::trim)
+                .filter(method -> !method.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        return new ServerExecutors(mode, directMethods);
+    }
+
+    /**
+     * Applies the executor mode and the per-method direct executor to a server builder.
+     *
+     * @param interceptorsBlock whether the server's interceptors may block, in which case no method runs inline
+     */
+    public void apply(ServerBuilder<?> builder, boolean interceptorsBlock) {
+        switch (mode) {
+            case VIRTUAL -> builder.executor(executor);
+            case DIRECT -> builder.directExecutor();
+            default -> {
+                // keep gRPC's default cached thread pool
+            }
+        }
+        Set<String> inlineMethods = directMethods;
+        if (interceptorsBlock && !inlineMethods.isEmpty()) {
+            LOGGER.warn("Not running {} inline: the server's interceptors may block the event loop", inlineMethods);
+            inlineMethods = Set.of();
+        }
+        if (!inlineMethods.isEmpty() && mode != ExecutorMode.DIRECT) {
+            builder.callExecutor(new DirectMethodExecutorSupplier(inlineMethods));
+        }
+        LOGGER.info("gRPC application executor: {}, inline methods: {}", mode, inlineMethods);
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() only exists from Java 21, while this module targets Java 17.
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invoke();
+        } catch (Throwable e) {
+            LOGGER.warn("Virtual threads need Java 21 or newer (running {}), falling back to the cached thread pool",
+                    Runtime.version());
+            return null;
+        }
+    }
+
+    private static final class DirectMethodExecutorSupplier implements ServerCallExecutorSupplier {
+        private final Set<String> directMethods;
+
+        private DirectMethodExecutorSupplier(Set<String> directMethods) {
+            this.directMethods = directMethods;
+        }
+
+        @Override
+        public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata metadata) {
+            // null keeps the server's executor for every other method
+            return directMethods.contains(call.getMethodDescriptor().getFullMethodName())
+                    ? MoreExecutors.directExecutor() : null;
+        }
+    }
+}
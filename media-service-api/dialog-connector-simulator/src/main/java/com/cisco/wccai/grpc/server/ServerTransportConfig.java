@@ -0,0 +1,141 @@
+package com.cisco.wccai.grpc.server;
+
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Netty transport settings for the main gRPC server.
+ *
+ * Every value is resolved from the environment first and then config.properties:
+ * <ul>
+ *   <li>GRPC_TRANSPORT - AUTO (epoll when available, otherwise NIO), EPOLL or NIO</li>
+ *   <li>GRPC_BOSS_THREADS / GRPC_WORKER_THREADS - event-loop sizes, 0 lets Netty pick (2 x cores)</li>
+ *   <li>GRPC_POOLED_DIRECT_ALLOCATOR - use a pooled allocator that prefers direct buffers</li>
+ *   <li>GRPC_MAX_CONCURRENT_CALLS_PER_CONNECTION - HTTP/2 MAX_CONCURRENT_STREAMS, 0 for unlimited</li>
+ *   <li>GRPC_FLOW_CONTROL_WINDOW - fixed HTTP/2 window in bytes, 0 keeps gRPC's auto-tuned window</li>
+ *   <li>GRPC_MAX_INBOUND_MESSAGE_SIZE - largest request message accepted, in bytes</li>
+ * </ul>
+ */
+public final class ServerTransportConfig {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerTransportConfig.class);
+
+    public enum TransportType {
+        AUTO, EPOLL, NIO
+    }
+
+    @Getter
+    private final TransportType transportType;
+    private final int bossThreads;
+    private final int workerThreads;
+    private final boolean pooledDirectAllocator;
+    private final int maxConcurrentCallsPerConnection;
+    private final int flowControlWindow;
+    private final int maxInboundMessageSize;
+
+    private EventLoopGroup bossGroup;
+    @Getter
+    private EventLoopGroup workerGroup;
+
+    private ServerTransportConfig(TransportType transportType, int bossThreads, int workerThreads, boolean pooledDirectAllocator,
+                                  int maxConcurrentCallsPerConnection, int flowControlWindow, int maxInboundMessageSize) {
+        this.transportType = resolve(transportType);
+        this.bossThreads = bossThreads;
+        this.workerThreads = workerThreads;
+        this.pooledDirectAllocator = pooledDirectAllocator;
+        this.maxConcurrentCallsPerConnection = maxConcurrentCallsPerConnection;
+        this.flowControlWindow = flowControlWindow;
+        this.maxInboundMessageSize = maxInboundMessageSize;
+    }
+
+    public static ServerTransportConfig fromSettings() {
+        return new ServerTransportConfig(
+                LoadProperties.getEnumSetting("GRPC_TRANSPORT", TransportType.class, TransportType.AUTO),
+                LoadProperties.getIntSetting("GRPC_BOSS_THREADS", 1),
+                LoadProperties.getIntSetting("GRPC_WORKER_THREADS", 0),
+                LoadProperties.getBooleanSetting("GRPC_POOLED_DIRECT_ALLOCATOR", true),
+                LoadProperties.getIntSetting("GRPC_MAX_CONCURRENT_CALLS_PER_CONNECTION", 0),
+                LoadProperties.getIntSetting("GRPC_FLOW_CONTROL_WINDOW", 0),
+                LoadProperties.getIntSetting("GRPC_MAX_INBOUND_MESSAGE_SIZE", 4 * 1024 * 1024));
+    }
+
+    /**
+     * Creates the event-loop groups and a server builder bound to them. The caller owns the groups
+     * and must call {@link #shutdown()} once the server has terminated.
+     */
+    public NettyServerBuilder newServerBuilder(int port) {
+        Class<? extends ServerChannel> channelType;
+        if (transportType == TransportType.EPOLL) {
+            bossGroup = new EpollEventLoopGroup(bossThreads, new DefaultThreadFactory("grpc-boss-epoll", true));
+            workerGroup = new EpollEventLoopGroup(workerThreads, new DefaultThreadFactory("grpc-worker-epoll", true));
+            channelType = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(bossThreads, new DefaultThreadFactory("grpc-boss-nio", true));
+            workerGroup = new NioEventLoopGroup(workerThreads, new DefaultThreadFactory("grpc-worker-nio", true));
+            channelType = NioServerSocketChannel.class;
+        }
+
+        NettyServerBuilder builder = NettyServerBuilder.forPort(port)
+                .bossEventLoopGroup(bossGroup)
+                .workerEventLoopGroup(workerGroup)
+                .channelType(channelType)
+                .maxInboundMessageSize(maxInboundMessageSize);
+
+        if (pooledDirectAllocator) {
+            ByteBufAllocator allocator = new PooledByteBufAllocator(true);
+            builder.withOption(ChannelOption.ALLOCATOR, allocator)
+                    .withChildOption(ChannelOption.ALLOCATOR, allocator);
+        }
+        if (maxConcurrentCallsPerConnection > 0) {
+            builder.maxConcurrentCallsPerConnection(maxConcurrentCallsPerConnection);
+        }
+        if (flowControlWindow > 0) {
+            builder.flowControlWindow(flowControlWindow);
+        }
+
+        LOGGER.info("gRPC transport: {}, boss threads: {}, worker threads: {}, pooled direct allocator: {}, "
+                        + "max calls per connection: {}, flow-control window: {}, max inbound message: {} bytes",
+                transportType, bossThreads, workerThreads == 0 ? "default" : workerThreads, pooledDirectAllocator,
+                maxConcurrentCallsPerConnection > 0 ? maxConcurrentCallsPerConnection : "unlimited",
+                flowControlWindow > 0 ? flowControlWindow : "auto-tuned", maxInboundMessageSize);
+        return builder;
+    }
+
+    public void shutdown() {
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static TransportType resolve(TransportType requested) {
+        if (requested == TransportType.NIO) {
+            return TransportType.NIO;
+        }
+        if (Epoll.isAvailable()) {
+            return TransportType.EPOLL;
+        }
+        if (requested == TransportType.EPOLL) {
+            LOGGER.warn("Native epoll transport requested but unavailable, falling back to NIO", Epoll.unavailabilityCause());
+        }
+        return TransportType.NIO;
+    }
+}
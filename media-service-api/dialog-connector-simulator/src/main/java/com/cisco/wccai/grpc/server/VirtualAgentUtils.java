@@ -6,7 +6,6 @@ import com.cisco.wccai.grpc.model.State;
 import com.google.protobuf.ByteString;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
 import java.util.Optional;
 
 import static com.cisco.wcc.ccai.media.v1.ByovaCommon.OutputEvent.EventType.START_OF_INPUT;
@@ -19,9 +18,24 @@ public class VirtualAgentUtils {
     private static final String EN_US = "en-US";
     private static final String WELCOME_AUDIO = "welcome.wav";
     private static final String GOOD_BYE_AUDIO = "good_bye.wav";
-    private static final String THANK_YOU_AUDIO = "thankyou.wav";
+    static final String THANK_YOU_AUDIO = "thankyou.wav";
 
     private static final String AGENT_TRANSFER_AUDIO = "agent-transfer.wav";
+    private static final String QUERY_PROMPT_TEXT = "Thank you for calling, have a good day";
+
+    // The fixed responses below are immutable protobuf messages built once from the preloaded prompt audio,
+    // so every conversation shares the same instances instead of re-reading and copying the WAV files.
+    private static final VoiceVAResponse START_OF_INPUT_RESPONSE = getVoiceVaResponseForOutPutEvent(START_OF_INPUT);
+    private static final VoiceVAResponse END_OF_INPUT_RESPONSE = buildEndOfInputResponse();
+    private static final VoiceVAResponse PARTIAL_RECOGNITION_RESPONSE = buildPartialRecognitionResponse();
+    private static final VoiceVAResponse AGENT_TRANSFER_RESPONSE = buildAgentTransferResponse();
+    private static final VoiceVAResponse QUERY_FINAL_RESPONSE = buildQueryFinalResponse();
+    private static final VoiceVAResponse QUERY_CHUNK_RESPONSE = buildQueryChunkResponse();
+    private static final VoiceVAResponse QUERY_FINAL_CHUNK_RESPONSE = buildQueryFinalChunkResponse();
+    private static final VoiceVAResponse NO_INPUT_RESPONSE = buildNoInputResponse();
+    private static final VoiceVAResponse CALL_END_RESPONSE = buildCallEndResponse();
+    private static final VoiceVAResponse FINAL_VA_RESPONSE = buildFinalVAResponse();
+    private static final VoiceVAResponse CALL_START_RESPONSE = buildCallStartResponse();
 
     private VirtualAgentUtils() {
     }
@@ -43,10 +57,65 @@ public class VirtualAgentUtils {
     }
 
     public static VoiceVAResponse startOfInputResponse() {
-        return getVoiceVaResponseForOutPutEvent(START_OF_INPUT);
+        return START_OF_INPUT_RESPONSE;
     }
 
     public static VoiceVAResponse getPartialRecognitionResponse() {
+        return PARTIAL_RECOGNITION_RESPONSE;
+    }
+
+    public static VoiceVAResponse getEndOfInputResponse() {
+        return END_OF_INPUT_RESPONSE;
+    }
+
+    public static VoiceVAResponse getAgentTransferResponse() {
+        return AGENT_TRANSFER_RESPONSE;
+    }
+
+    public static VoiceVAResponse getQueryFinalResponse() {
+        return QUERY_FINAL_RESPONSE;
+    }
+
+    public static VoiceVAResponse getQueryChunkResponse() {
+        return QUERY_CHUNK_RESPONSE;
+    }
+
+    /**
+     * Builds a CHUNK response around one slice of prompt audio; the slice is referenced, not copied.
+     */
+    public static VoiceVAResponse getQueryChunkResponse(ByteString audioChunk) {
+        return VoiceVAResponse.newBuilder()
+                .addPrompts(Prompt.newBuilder()
+                        .setText(QUERY_PROMPT_TEXT)
+                        .setAudioContent(audioChunk)
+                        .setIsBargeInEnabled(false)
+                        .build())
+                .setResponseType(VoiceVAResponse.ResponseType.CHUNK)
+                .setInputMode(Voicevirtualagent.VoiceVAInputMode.INPUT_VOICE_DTMF)
+                .build();
+    }
+
+    public static VoiceVAResponse getQueryFinalChunkResponse() {
+        return QUERY_FINAL_CHUNK_RESPONSE;
+    }
+
+    public static VoiceVAResponse getNoInputResponse() {
+        return NO_INPUT_RESPONSE;
+    }
+
+    public static VoiceVAResponse getCallEndResponse() {
+        return CALL_END_RESPONSE;
+    }
+
+    public static VoiceVAResponse getFinalVAResponse() {
+        return FINAL_VA_RESPONSE;
+    }
+
+    public static VoiceVAResponse getCallStartResponse() {
+        return CALL_START_RESPONSE;
+    }
+
+    private static VoiceVAResponse buildPartialRecognitionResponse() {
         return VoiceVAResponse
                 .newBuilder()
                 .setSessionTranscript(
@@ -57,42 +126,42 @@ public class VirtualAgentUtils {
                 .setResponseType(VoiceVAResponse.ResponseType.PARTIAL).build();
     }
 
-    public static VoiceVAResponse getEndOfInputResponse() {
+    private static VoiceVAResponse buildEndOfInputResponse() {
         return VoiceVAResponse.newBuilder().addOutputEvents(getOutputEvent(ByovaCommon.OutputEvent.EventType.END_OF_INPUT)).build();
     }
 
-    public static VoiceVAResponse getAgentTransferResponse() {
+    private static VoiceVAResponse buildAgentTransferResponse() {
         return VoiceVAResponse.newBuilder()
                 .addPrompts(createPrompt("setting up prompt from dialog simulator for AGENT_TRANSFER event", AGENT_TRANSFER_AUDIO, false))
                 .addOutputEvents(getOutputEvent(ByovaCommon.OutputEvent.EventType.TRANSFER_TO_AGENT))
                 .build();
     }
 
-    public static VoiceVAResponse getQueryFinalResponse() {
+    static VoiceVAResponse buildQueryFinalResponse() {
         return VoiceVAResponse.newBuilder()
-                .addPrompts(createPrompt("Thank you for calling, have a good day", THANK_YOU_AUDIO, false))
+                .addPrompts(createPrompt(QUERY_PROMPT_TEXT, THANK_YOU_AUDIO, false))
                 .setResponseType(VoiceVAResponse.ResponseType.FINAL)
                 .setInputMode(Voicevirtualagent.VoiceVAInputMode.INPUT_VOICE_DTMF)
                 .build();
     }
 
-    public static VoiceVAResponse getQueryChunkResponse() {
+    private static VoiceVAResponse buildQueryChunkResponse() {
         return VoiceVAResponse.newBuilder()
-                .addPrompts(createPrompt("Thank you for calling, have a good day", THANK_YOU_AUDIO, false))
+                .addPrompts(createPrompt(QUERY_PROMPT_TEXT, THANK_YOU_AUDIO, false))
                 .setResponseType(VoiceVAResponse.ResponseType.CHUNK)
                 .setInputMode(Voicevirtualagent.VoiceVAInputMode.INPUT_VOICE_DTMF)
                 .build();
     }
 
-    public static VoiceVAResponse getQueryFinalChunkResponse() {
+    private static VoiceVAResponse buildQueryFinalChunkResponse() {
         return VoiceVAResponse.newBuilder()
-                .addPrompts(createPromptWithEmptyAudio("Thank you for calling, have a good day", false))
+                .addPrompts(createPromptWithEmptyAudio(QUERY_PROMPT_TEXT, false))
                 .setResponseType(VoiceVAResponse.ResponseType.FINAL)
                 .setInputMode(Voicevirtualagent.VoiceVAInputMode.INPUT_VOICE_DTMF)
                 .build();
     }
 
-    public static VoiceVAResponse getNoInputResponse() {
+    private static VoiceVAResponse buildNoInputResponse() {
         return VoiceVAResponse.newBuilder()
                 .addPrompts(createPrompt("setting up prompt from dialog simulator for NO_INPUT event", GOOD_BYE_AUDIO, false))
                 .addOutputEvents(getOutputEvent(ByovaCommon.OutputEvent.EventType.NO_INPUT))
@@ -116,14 +185,14 @@ public class VirtualAgentUtils {
                 .build();
     }
 
-    public static VoiceVAResponse getCallEndResponse() {
+    private static VoiceVAResponse buildCallEndResponse() {
         return VoiceVAResponse.newBuilder()
                 .addPrompts(createPrompt("setting up prompt from dialog simulator for CALL_END event", GOOD_BYE_AUDIO, false))
                 .addOutputEvents(getOutputEvent(ByovaCommon.OutputEvent.EventType.SESSION_END))
                 .build();
     }
 
-    public static VoiceVAResponse getFinalVAResponse() {
+    private static VoiceVAResponse buildFinalVAResponse() {
         return VoiceVAResponse.newBuilder()
                 .addPrompts(createPrompt("Thank you for calling the Virtual agent simulator. Have a nice day!", GOOD_BYE_AUDIO))
                 .setSessionTranscript(createTextContent("setting reply text from dialog simulator for final NLU Response"))
@@ -131,7 +200,7 @@ public class VirtualAgentUtils {
                 .build();
     }
 
-    public static VoiceVAResponse getCallStartResponse() {
+    static VoiceVAResponse buildCallStartResponse() {
         return VoiceVAResponse
                 .newBuilder()
                 .addPrompts(createPrompt("setting prompt from dialog simulator", WELCOME_AUDIO))
@@ -158,16 +227,10 @@ public class VirtualAgentUtils {
     }
 
     private static ByteString getAudioContent(String fileName) {
-        try {
-            return switch (fileName) {
-                case WELCOME_AUDIO, GOOD_BYE_AUDIO, AGENT_TRANSFER_AUDIO ->
-                        ByteString.readFrom(VirtualAgentUtils.class.getClassLoader().getResourceAsStream("audio/" + fileName));
-                default -> ByteString.EMPTY;
-            };
-        } catch (IOException e) {
-            log.error("Error reading audio content from file: {}", fileName, e);
-        }
-        return ByteString.EMPTY;
+        return switch (fileName) {
+            case WELCOME_AUDIO, GOOD_BYE_AUDIO, AGENT_TRANSFER_AUDIO -> PromptAssetRegistry.getAudio(fileName);
+            default -> ByteString.EMPTY;
+        };
     }
 
     public static ByovaCommon.InputHandlingConfig inputHandlingConfig(int dtmfInputLength, int interDigitTimeoutMillis, ByovaCommon.DTMFDigits termChar, int inputTimeoutMillis) {
@@ -21,6 +21,9 @@ public class VoiceVAContentObserver implements StreamObserver<Voicevirtualagent.
 
     public VoiceVAContentObserver(StreamObserver<Voicevirtualagent.VoiceVAResponse> responseObserver) {
         this.responseObserver = responseObserver;
+        if (responseObserver instanceof FlowControlledStreamObserver<Voicevirtualagent.VoiceVAResponse> flowControlled) {
+            flowControlled.setOnCancelHandler(this::onCancel);
+        }
     }
 
     @Override
@@ -37,13 +40,27 @@ public class VoiceVAContentObserver implements StreamObserver<Voicevirtualagent.
     public void onError(Throwable throwable) {
         log.error("Error occurred for conversationId: {} with cause: {} and , message: {} ",
                 voiceVARequest.getConversationId(), throwable.getCause(), throwable.getMessage());
+        if (voiceVirtualAgentService != null) {
+            voiceVirtualAgentService.cancelPlayout();
+        }
         responseObserver.onError(throwable);
     }
 
     @Override
     public void onCompleted() {
         log.info("On onCompleted for conversationId: {} ", conversationId);
+        // A CHUNK prompt may still be playing out; the closing responses must follow its FINAL response.
+        voiceVirtualAgentService.whenPlayoutComplete(this::completeConversation);
+    }
+
+    private void onCancel() {
+        log.info("Call cancelled by client for conversationId: {}", conversationId);
+        if (voiceVirtualAgentService != null) {
+            voiceVirtualAgentService.cancelPlayout();
+        }
+    }
 
+    private void completeConversation() {
         if (voiceVirtualAgentService.isEndOfInput()) {
             log.info("writing response from onCompleted to client for IS_END_OF_INPUT event, conversationId : {}", conversationId);
             responseObserver.onNext(getFinalVAResponse());
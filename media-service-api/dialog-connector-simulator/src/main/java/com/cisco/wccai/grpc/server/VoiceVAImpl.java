@@ -3,19 +3,31 @@ package com.cisco.wccai.grpc.server;
 import com.cisco.wcc.ccai.media.v1.ByovaCommon;
 import com.cisco.wcc.ccai.media.v1.VoiceVirtualAgentGrpc;
 import com.cisco.wcc.ccai.media.v1.Voicevirtualagent;
+import com.cisco.wccai.grpc.server.FlowControlledStreamObserver.OutboundQueueMetrics;
+import com.cisco.wccai.grpc.server.FlowControlledStreamObserver.OverflowPolicy;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /*
     This class is used to provide implementation for Virtual agent and processes the input events or lists the virtual agents.
 */
 @Slf4j
 public class VoiceVAImpl extends VoiceVirtualAgentGrpc.VoiceVirtualAgentImplBase {
 
+    private static final int RESPONSE_QUEUE_CAPACITY = LoadProperties.getIntSetting("VA_RESPONSE_QUEUE_CAPACITY", 64);
+    private static final OverflowPolicy RESPONSE_OVERFLOW_POLICY =
+            LoadProperties.getEnumSetting("VA_RESPONSE_OVERFLOW_POLICY", OverflowPolicy.class, OverflowPolicy.COALESCE);
+    private static final OutboundQueueMetrics OUTBOUND_QUEUE_METRICS = new OutboundQueueMetrics("VoiceVirtualAgent");
+
     @Override
     public StreamObserver<Voicevirtualagent.VoiceVARequest> processCallerInput(StreamObserver<Voicevirtualagent.VoiceVAResponse> responseObserver) {
         log.info("Audio request received");
-        return new VoiceVAContentObserver(responseObserver);
+        return new VoiceVAContentObserver(flowControlled(responseObserver));
     }
 
     @Override
@@ -26,4 +38,44 @@ public class VoiceVAImpl extends VoiceVirtualAgentGrpc.VoiceVirtualAgentImplBase
         responseObserver.onCompleted();
     }
 
-}
\ No newline at end of file
+    // Honors transport readiness so a stalled client cannot make the server buffer prompts without limit.
+    private static StreamObserver<Voicevirtualagent.VoiceVAResponse> flowControlled(StreamObserver<Voicevirtualagent.VoiceVAResponse> responseObserver) {
+        if (!(responseObserver instanceof ServerCallStreamObserver<Voicevirtualagent.VoiceVAResponse> serverCallStreamObserver)) {
+            return responseObserver;
+        }
+        return new FlowControlledStreamObserver<>(serverCallStreamObserver, RESPONSE_QUEUE_CAPACITY, RESPONSE_OVERFLOW_POLICY,
+                VoiceVAImpl::coalesce, OUTBOUND_QUEUE_METRICS);
+    }
+
+    /**
+     * Replaces the newest queued response with the next one rather than appending to it, so a stalled client cannot
+     * grow it without bound: its prompts are superseded, and only what the client must not miss is carried over -
+     * the output events of both (session end, transfer), one per event type with the newest winning, and the
+     * session transcript and summary.
+     */
+    static Voicevirtualagent.VoiceVAResponse coalesce(Voicevirtualagent.VoiceVAResponse queued, Voicevirtualagent.VoiceVAResponse next) {
+        if (queued.getOutputEventsCount() == 0 && !queued.hasSessionTranscript() && !queued.hasSessionSummary()) {
+            return next;
+        }
+        Voicevirtualagent.VoiceVAResponse.Builder coalesced = next.toBuilder();
+        if (queued.getOutputEventsCount() > 0) {
+            // Bounded by the number of event types, however often responses are coalesced
+            Map<Integer, ByovaCommon.OutputEvent> events = new LinkedHashMap<>();
+            for (ByovaCommon.OutputEvent event : queued.getOutputEventsList()) {
+                events.put(event.getEventTypeValue(), event);
+            }
+            for (ByovaCommon.OutputEvent event : next.getOutputEventsList()) {
+                events.put(event.getEventTypeValue(), event);
+            }
+            coalesced.clearOutputEvents().addAllOutputEvents(events.values());
+        }
+        if (!next.hasSessionTranscript() && queued.hasSessionTranscript()) {
+            coalesced.setSessionTranscript(queued.getSessionTranscript());
+        }
+        if (!next.hasSessionSummary() && queued.hasSessionSummary()) {
+            coalesced.setSessionSummary(queued.getSessionSummary());
+        }
+        return coalesced.build();
+    }
+
+}
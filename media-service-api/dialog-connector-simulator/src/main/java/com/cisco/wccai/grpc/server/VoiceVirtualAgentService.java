@@ -2,6 +2,7 @@ package com.cisco.wccai.grpc.server;
 
 import com.cisco.wcc.ccai.media.v1.ByovaCommon;
 import com.cisco.wcc.ccai.media.v1.Voicevirtualagent;
+import com.cisco.wccai.grpc.utils.LoadProperties;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
 import io.grpc.stub.StreamObserver;
@@ -10,6 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVARequest;
 import static com.cisco.wcc.ccai.media.v1.Voicevirtualagent.VoiceVAResponse;
@@ -21,11 +23,15 @@ import static com.cisco.wccai.grpc.server.VirtualAgentUtils.*;
 */
 @Slf4j
 public class VoiceVirtualAgentService {
+    // WAV sends the whole prompt in one FINAL response, CHUNK plays it out in real-time paced CHUNK responses
+    private static final boolean WAV_STREAMING = !"CHUNK".equalsIgnoreCase(LoadProperties.getSetting("PROMPT_STREAMING_MODE", "WAV"));
+
     private boolean isStartOfInput = false;
     @Getter
     private boolean isEndOfInput = false;
-    private boolean isWavAudio = true; // Set this flag to false to enable CHUNK streaming
+    private boolean isWavAudio = WAV_STREAMING;
     private long audioBufferSize = 0;
+    private PromptPlayoutEngine.Playout activePlayout;
 
     public void processVoiceVirtualAgentRequest(VoiceVARequest voiceVARequest, StreamObserver<VoiceVAResponse> voiceVAResponse) {
         switch (voiceVARequest.getVoiceVaInputTypeCase()) {
@@ -140,13 +146,33 @@ public class VoiceVirtualAgentService {
         if (isWavAudio) {
             log.info("Sending response with WAV audio content.");
             voiceVAResponse.onNext(getQueryFinalResponse());
+        } else if (activePlayout != null && !activePlayout.getCompletion().isDone()) {
+            log.info("Previous CHUNK prompt is still playing, not starting another for conversationId: {}", voiceVARequest.getConversationId());
         } else {
             log.info("Sending response with CHUNK audio content.");
-            voiceVAResponse.onNext(getQueryChunkResponse());
-            voiceVAResponse.onNext(getQueryChunkResponse());
-            voiceVAResponse.onNext(getQueryFinalChunkResponse());
+            activePlayout = PromptPlayoutEngine.getInstance().play(PromptAssetRegistry.getAudio(THANK_YOU_AUDIO),
+                    VirtualAgentUtils::getQueryChunkResponse, getQueryFinalChunkResponse(), voiceVAResponse);
         }
         log.info("Buffered audio processed, clearing the audio buffer for conversationId: {}", voiceVARequest.getConversationId());
         audioBufferSize = 0;
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs the action once the prompt currently being played out has sent its FINAL response,
+     * or immediately when nothing is playing.
+     */
+    public void whenPlayoutComplete(Runnable action) {
+        CompletableFuture<Void> completion = activePlayout == null ? null : activePlayout.getCompletion();
+        if (completion == null || completion.isDone()) {
+            action.run();
+        } else {
+            completion.thenRun(action);
+        }
+    }
+
+    public void cancelPlayout() {
+        if (activePlayout != null) {
+            activePlayout.cancel();
+        }
+    }
+}
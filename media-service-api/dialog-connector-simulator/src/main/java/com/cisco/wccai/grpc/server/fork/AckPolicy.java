@@ -0,0 +1,88 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How often a fork stream acknowledges the audio chunks it received.
+ *
+ * <ul>
+ *   <li>EVERY_CHUNK - one response per chunk</li>
+ *   <li>EVERY_N - one response per FORK_ACK_EVERY_N chunks</li>
+ *   <li>EVERY_T_MS - at most one response per FORK_ACK_INTERVAL_MS, sent with the next chunk after the interval</li>
+ *   <li>ERRORS_ONLY - no responses for chunks that were processed</li>
+ * </ul>
+ *
+ * Error responses are sent in every mode. Except with EVERY_CHUNK and ERRORS_ONLY, chunks not acknowledged yet
+ * get one last response when the stream completes.
+ */
+public final class AckPolicy {
+
+    public enum AckMode {
+        EVERY_CHUNK, EVERY_N, EVERY_T_MS, ERRORS_ONLY
+    }
+
+    @Getter
+    private final AckMode mode;
+    private final int everyN;
+    private final long intervalNanos;
+    private final Counter sent;
+    private final Counter saved;
+
+    private AckPolicy(AckMode mode, int everyN, long intervalMillis) {
+        this.mode = mode;
+        this.everyN = Math.max(1, everyN);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        sent = registry.counter("fork_acks_sent_total", "StreamConversationAudio acknowledgements sent for processed chunks");
+        saved = registry.counter("fork_acks_saved_total", "StreamConversationAudio chunk acknowledgements not sent because of ack coalescing");
+    }
+
+    public static AckPolicy of(AckMode mode, int everyN, long intervalMillis) {
+        return new AckPolicy(mode, everyN, intervalMillis);
+    }
+
+    public static AckPolicy fromSettings() {
+        return of(LoadProperties.getEnumSetting("FORK_ACK_MODE", AckMode.class, AckMode.EVERY_CHUNK),
+                LoadProperties.getIntSetting("FORK_ACK_EVERY_N", 50),
+                LoadProperties.getLongSetting("FORK_ACK_INTERVAL_MS", 1000));
+    }
+
+    /**
+     * Decides whether the chunk just processed is acknowledged and counts the decision.
+     *
+     * @param unackedChunks     chunks processed since the last acknowledgement, this one included
+     * @param nanosSinceLastAck time since the last acknowledgement, or since the stream started
+     */
+    public boolean shouldAck(int unackedChunks, long nanosSinceLastAck) {
+        boolean ack = switch (mode) {
+            case EVERY_CHUNK -> true;
+            case EVERY_N -> unackedChunks >= everyN;
+            case EVERY_T_MS -> nanosSinceLastAck >= intervalNanos;
+            case ERRORS_ONLY -> false;
+        };
+        if (ack) {
+            sent.increment();
+            saved.add(unackedChunks - 1);
+        } else if (mode == AckMode.ERRORS_ONLY) {
+            saved.increment();
+        }
+        return ack;
+    }
+
+    /**
+     * Decides whether the chunks still unacknowledged when the stream completes get a last acknowledgement.
+     */
+    public boolean shouldAckOnCompletion(int unackedChunks) {
+        if (unackedChunks == 0 || mode == AckMode.EVERY_CHUNK || mode == AckMode.ERRORS_ONLY) {
+            return false;
+        }
+        sent.increment();
+        saved.add(unackedChunks - 1);
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size buffers shared by the in-memory recordings of all fork streams.
+ *
+ * Chunks returned by a finished recording are handed to the next one, so a steady stream of calls reuses the same
+ * buffers instead of allocating and collecting them. Chunks are small enough never to be humongous allocations and
+ * can be direct, keeping the audio off the heap altogether. At most {@code maxPooled} free chunks are retained;
+ * beyond that, released chunks are left to the garbage collector.
+ */
+public final class AudioChunkPool {
+
+    @Getter
+    private final int chunkBytes;
+    private final boolean direct;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final Counter allocated;
+    private final Counter reused;
+    private final Counter discarded;
+
+    public AudioChunkPool(int chunkBytes, boolean direct, int maxPooled) {
+        this.chunkBytes = Math.max(1024, chunkBytes);
+        this.direct = direct;
+        this.maxPooled = Math.max(0, maxPooled);
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("fork_chunk_pool_free", "Free fork audio chunks retained by the pool", freeCount::get);
+        registry.gauge("fork_chunk_pool_in_use", "Fork audio chunks holding audio of recordings", inUse::get);
+        registry.gauge("fork_chunk_pool_in_use_bytes", "Capacity of the fork audio chunks holding audio of recordings",
+                () -> (double) inUse.get() * this.chunkBytes);
+        allocated = registry.counter("fork_chunk_pool_allocated_total", "Fork audio chunks allocated because the pool was empty");
+        reused = registry.counter("fork_chunk_pool_reused_total", "Fork audio chunks taken from the pool");
+        discarded = registry.counter("fork_chunk_pool_discarded_total", "Released fork audio chunks dropped because the pool was full");
+    }
+
+    public static AudioChunkPool fromSettings() {
+        return new AudioChunkPool(LoadProperties.getIntSetting("FORK_CHUNK_BYTES", 32768),
+                LoadProperties.getBooleanSetting("FORK_CHUNK_DIRECT", false),
+                LoadProperties.getIntSetting("FORK_CHUNK_POOL_MAX", 2048));
+    }
+
+    /**
+     * @return an empty chunk of {@link #getChunkBytes()} bytes
+     */
+    public ByteBuffer acquire() {
+        inUse.incrementAndGet();
+        ByteBuffer chunk = free.poll();
+        if (chunk != null) {
+            freeCount.decrementAndGet();
+            reused.increment();
+            return chunk;
+        }
+        allocated.increment();
+        return direct ? ByteBuffer.allocateDirect(chunkBytes) : ByteBuffer.allocate(chunkBytes);
+    }
+
+    /**
+     * Returns a chunk taken with {@link #acquire()}; it must not be used afterwards.
+     */
+    public void release(ByteBuffer chunk) {
+        inUse.decrementAndGet();
+        if (freeCount.incrementAndGet() <= maxPooled) {
+            free.offer(chunk.clear());
+        } else {
+            freeCount.decrementAndGet();
+            discarded.increment();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import java.io.IOException;
+
+/**
+ * Where finished fork recordings are stored.
+ *
+ * Object names are relative, slash separated paths such as {@code audio/<conversationId>-<roleId>.wav}.
+ * Implementations must be safe to call from several threads at once.
+ */
+public interface AudioSink {
+
+    /**
+     * Stores a {@link RoleAudioBuffer#finish() finished} recording under the given name, replacing any object of
+     * that name. Returns once the sink considers the object stored.
+     */
+    void store(String objectName, RoleAudioBuffer recording) throws IOException;
+
+    /**
+     * Stores a small object that describes recordings, such as a segment manifest, replacing any object of that name.
+     */
+    void storeMetadata(String objectName, byte[] content, String contentType) throws IOException;
+
+    /**
+     * @return where an object of this name is stored, for logs
+     */
+    String describe(String objectName);
+}
@@ -0,0 +1,56 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+
+/**
+ * Creates the {@link AudioSink} selected by FORK_SINK.
+ *
+ * <ul>
+ *   <li>GCS - objects in the GCS_BUCKET_NAME bucket, with the default application credentials</li>
+ *   <li>LOCAL - files below FORK_LOCAL_DIR, forced to disk as FORK_LOCAL_FSYNC says</li>
+ * </ul>
+ */
+public final class AudioSinks {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AudioSinks.class);
+
+    public enum SinkType {
+        GCS, LOCAL
+    }
+
+    private AudioSinks() {
+    }
+
+    /**
+     * @return the configured sink, or null if it is not usable; forked audio cannot be saved then
+     */
+    public static AudioSink fromSettings() {
+        SinkType type = LoadProperties.getEnumSetting("FORK_SINK", SinkType.class, SinkType.GCS);
+        if (type == SinkType.LOCAL) {
+            Path directory = Path.of(LoadProperties.getSetting("FORK_LOCAL_DIR", "fork-recordings"));
+            LocalFileAudioSink.FsyncPolicy fsyncPolicy = LoadProperties.getEnumSetting("FORK_LOCAL_FSYNC",
+                    LocalFileAudioSink.FsyncPolicy.class, LocalFileAudioSink.FsyncPolicy.DATA);
+            LOGGER.info("Forked audio is saved below {} with fsync policy {}", directory.toAbsolutePath(), fsyncPolicy);
+            return new LocalFileAudioSink(directory, fsyncPolicy);
+        }
+
+        String bucketName = LoadProperties.getSetting("GCS_BUCKET_NAME", null);
+        if (bucketName == null || bucketName.isEmpty()) {
+            LOGGER.error("GCS_BUCKET_NAME environment variable not set. Audio will not be saved.");
+            return null;
+        }
+        LOGGER.info("GCS_BUCKET_NAME environment variable set to {}", bucketName);
+        Storage storage = StorageOptions.getDefaultInstance().getService();
+        if (storage == null) {
+            LOGGER.error("Could not get default storage instance. This service will not be able to save audio.");
+            return null;
+        }
+        return new GcsAudioSink(storage, bucketName);
+    }
+}
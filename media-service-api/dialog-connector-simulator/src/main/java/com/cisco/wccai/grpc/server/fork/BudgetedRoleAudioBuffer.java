@@ -0,0 +1,69 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts a recording's audio against the {@link IntakeBudget} from the moment it is appended until the recording is
+ * closed, that is stored or discarded, and from {@link #finish()} on as on its way to the sink. Until then it also
+ * counts as held by its stream.
+ */
+final class BudgetedRoleAudioBuffer implements RoleAudioBuffer {
+
+    private final RoleAudioBuffer delegate;
+    private final IntakeBudget budget;
+    private final AtomicLong streamHeld;
+    private long counted;
+    private boolean finished;
+    private boolean closed;
+
+    BudgetedRoleAudioBuffer(RoleAudioBuffer delegate, IntakeBudget budget, AtomicLong streamHeld) {
+        this.delegate = delegate;
+        this.budget = budget;
+        this.streamHeld = streamHeld;
+    }
+
+    @Override
+    public void append(ByteString data) throws IOException {
+        delegate.append(data);
+        counted += data.size();
+        budget.acquire(data.size());
+        streamHeld.addAndGet(data.size());
+    }
+
+    @Override
+    public long getAudioBytes() {
+        return delegate.getAudioBytes();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        delegate.finish();
+        if (!finished) {
+            finished = true;
+            budget.handOff(counted);
+            streamHeld.addAndGet(-counted);
+        }
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel target) throws IOException {
+        delegate.writeTo(target);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        delegate.close();
+        if (!finished) {
+            streamHeld.addAndGet(-counted);
+        }
+        budget.release(counted, finished);
+    }
+}
@@ -0,0 +1,51 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import lombok.Getter;
+
+/**
+ * How the roles of a forked conversation map onto recordings.
+ *
+ * <ul>
+ *   <li>PER_ROLE - one mono recording per role</li>
+ *   <li>STEREO - two roles interleaved into one 2-channel recording, aligned by their audio timestamps through a
+ *   {@link StereoAligner}; any further role still gets a mono recording of its own</li>
+ * </ul>
+ */
+public final class ChannelLayout {
+
+    public enum Layout {
+        PER_ROLE, STEREO
+    }
+
+    @Getter
+    private final Layout layout;
+    @Getter
+    private final int jitterMillis;
+
+    private ChannelLayout(Layout layout, int jitterMillis) {
+        this.layout = layout;
+        this.jitterMillis = Math.max(0, jitterMillis);
+    }
+
+    /**
+     * @param jitterMillis how late, behind the newest audio of either role, a STEREO frame may arrive and still be
+     *                     placed at its timestamp
+     */
+    public static ChannelLayout of(Layout layout, int jitterMillis) {
+        return new ChannelLayout(layout, jitterMillis);
+    }
+
+    public static ChannelLayout fromSettings() {
+        return of(LoadProperties.getEnumSetting("FORK_CHANNEL_LAYOUT", Layout.class, Layout.PER_ROLE),
+                LoadProperties.getIntSetting("FORK_STEREO_JITTER_MS", 200));
+    }
+
+    /**
+     * @param format the stream's mono format
+     * @return the aligner of a new STEREO stream, null with PER_ROLE
+     */
+    public StereoAligner newAligner(WavFormat format, RoleAudioBuffers buffers) {
+        return layout == Layout.STEREO ? new StereoAligner(format, jitterMillis, buffers) : null;
+    }
+}
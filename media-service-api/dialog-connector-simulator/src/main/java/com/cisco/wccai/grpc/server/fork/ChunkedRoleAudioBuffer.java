@@ -0,0 +1,94 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the recording in memory, in fixed-size chunks from an {@link AudioChunkPool}.
+ *
+ * Growing never copies audio already received, and the WAV file is never assembled into one array: the header and
+ * the chunks are written to the destination as they are, in one gathering write where the channel supports it.
+ * Closing the buffer returns its chunks to the pool.
+ */
+final class ChunkedRoleAudioBuffer implements RoleAudioBuffer {
+
+    private final WavFormat format;
+    private final AudioChunkPool pool;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+    private long audioBytes;
+    private boolean closed;
+
+    ChunkedRoleAudioBuffer(WavFormat format, AudioChunkPool pool) {
+        this.format = format;
+        this.pool = pool;
+    }
+
+    @Override
+    public void append(ByteString data) {
+        int offset = 0;
+        int size = data.size();
+        while (offset < size) {
+            if (current == null || !current.hasRemaining()) {
+                current = pool.acquire();
+                chunks.add(current);
+            }
+            int length = Math.min(current.remaining(), size - offset);
+            (length == size ? data : data.substring(offset, offset + length)).copyTo(current);
+            offset += length;
+        }
+        audioBytes += size;
+    }
+
+    @Override
+    public long getAudioBytes() {
+        return audioBytes;
+    }
+
+    @Override
+    public void finish() {
+        // The header is generated when the file is written out
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel target) throws IOException {
+        // Read-only views, so the recording can be written again if an upload attempt fails
+        ByteBuffer[] sources = new ByteBuffer[chunks.size() + 1];
+        sources[0] = format.header(audioBytes);
+        for (int i = 0; i < chunks.size(); i++) {
+            sources[i + 1] = chunks.get(i).asReadOnlyBuffer().flip();
+        }
+        if (target instanceof GatheringByteChannel gathering) {
+            int first = 0;
+            while (first < sources.length) {
+                gathering.write(sources, first, sources.length - first);
+                while (first < sources.length && !sources[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        } else {
+            for (ByteBuffer source : sources) {
+                while (source.hasRemaining()) {
+                    target.write(source);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        chunks.forEach(pool::release);
+        chunks.clear();
+        current = null;
+    }
+}
@@ -0,0 +1,270 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.ParticipantRole;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.protobuf.ByteString;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Talk time, silence, overtalk and energy of a forked conversation, computed frame by frame while its audio arrives
+ * rather than by reading the recordings back.
+ *
+ * Each role's audio, u-law decoded or 16-bit PCM, is cut into frames; per frame only the sum of squared samples is
+ * kept, from which its energy and voice activity follow before the next frame starts. A role's frames are
+ * positioned by the audio received, as in its recording; a role that joins later starts alongside the newest audio
+ * of the others. Overtalk is counted per frame once every role has passed it, from a ring of the speaking roles per
+ * frame spanning {@value #OVERLAP_SECONDS} s: a role that joins or falls further behind than that, such as a leg
+ * that stops sending, counts as silent for the frames already counted. Memory is therefore fixed per role and does
+ * not grow with the call. Not thread-safe: used by one stream's handler.
+ */
+public final class ConversationAnalytics {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int OVERLAP_SECONDS = 30;
+    private static final double FULL_SCALE_SQUARED = 32768.0 * 32768.0;
+    private static final double SILENCE_DBFS = -100;
+    private static final short[] MULAW_TO_LINEAR = new short[256];
+
+    static {
+        for (int i = 0; i < MULAW_TO_LINEAR.length; i++) {
+            // G.711: the code is stored inverted, as sign, 3-bit exponent and 4-bit mantissa
+            int code = ~i & 0xFF;
+            int magnitude = (((code & 0x0F) << 3) + 0x84) << ((code & 0x70) >> 4);
+            MULAW_TO_LINEAR[i] = (short) ((code & 0x80) != 0 ? 0x84 - magnitude : magnitude - 0x84);
+        }
+    }
+
+    private final String conversationId;
+    private final WavFormat format;
+    private final SpeechAnalytics settings;
+    private final int frameSamples;
+    private final int hangoverFrames;
+    private final double thresholdMeanSquare;
+    private final Map<String, RoleAnalytics> roles = new LinkedHashMap<>();
+    // Roles speaking in each frame not counted yet, by frame modulo the ring's length
+    private final byte[] speaking;
+    // Frames before this are counted; the furthest frame any role reached
+    private long settled;
+    private long end;
+    private long talkFrames;
+    private long overtalkFrames;
+    private long overtalkEvents;
+    private boolean overtalking;
+    private boolean finished;
+
+    ConversationAnalytics(String conversationId, WavFormat format, SpeechAnalytics settings) {
+        this.conversationId = conversationId;
+        this.format = format;
+        this.settings = settings;
+        this.frameSamples = Math.max(1, (int) ((long) format.sampleRate() * settings.getFrameMillis() / 1000));
+        this.hangoverFrames = settings.getHangoverMillis() / settings.getFrameMillis();
+        this.thresholdMeanSquare = FULL_SCALE_SQUARED * Math.pow(10, settings.getThresholdDbfs() / 10);
+        this.speaking = new byte[Math.max(1, OVERLAP_SECONDS * 1000 / settings.getFrameMillis())];
+    }
+
+    /**
+     * Takes in a chunk of the role's audio, in the stream's format.
+     */
+    public void accept(String roleId, ParticipantRole participantRole, ByteString audio) {
+        if (finished) {
+            return;
+        }
+        RoleAnalytics role = roles.get(roleId);
+        if (role == null) {
+            long frames = audio.size() / format.blockAlign() / frameSamples;
+            role = new RoleAnalytics(participantRole, Math.max(0, end - frames));
+            roles.put(roleId, role);
+        }
+        // Read in place: the list is the chunk's own backing buffers
+        for (ByteBuffer part : audio.asReadOnlyByteBufferList()) {
+            role.accept(part);
+        }
+    }
+
+    public String getObjectName(boolean segmented) {
+        return String.format(segmented ? "audio/%s/analytics.json" : "audio/%s-analytics.json", conversationId);
+    }
+
+    /**
+     * Counts the last, partial frames, after which further audio is ignored.
+     *
+     * @return the summary, as compact JSON
+     */
+    public byte[] toJson() {
+        if (!finished) {
+            finished = true;
+            roles.values().forEach(RoleAnalytics::flush);
+            settle(end);
+        }
+        long frameMillis = settings.getFrameMillis();
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        root.put("conversationId", conversationId);
+        root.put("frameMillis", frameMillis);
+        root.put("vadThresholdDbfs", settings.getThresholdDbfs());
+        root.put("durationMillis", end * frameMillis);
+        root.put("talkMillis", talkFrames * frameMillis);
+        root.put("silenceMillis", (end - talkFrames) * frameMillis);
+        root.put("overtalkMillis", overtalkFrames * frameMillis);
+        root.put("overtalkEvents", overtalkEvents);
+        ObjectNode roleNodes = root.putObject("roles");
+        roles.forEach((roleId, role) -> {
+            ObjectNode node = roleNodes.putObject(roleId);
+            if (role.participantRole != ParticipantRole.ROLE_UNSPECIFIED) {
+                node.put("participantRole", role.participantRole.name());
+            }
+            node.put("durationMillis", role.totalSamples * 1000 / format.sampleRate())
+                    .put("talkMillis", role.speechFrames * frameMillis)
+                    .put("silenceRatio", role.frames == 0 ? 1 : round(1 - (double) role.speechFrames / role.frames, 1000))
+                    .put("talkSpurts", role.spurts)
+                    .put("rmsDbfs", round(toDbfs(role.frames == 0 ? 0 : role.meanSquareSum / role.frames), 10))
+                    .put("meanSpeechDbfs", role.speechFrames == 0 ? SILENCE_DBFS : round(role.speechDbfsSum / role.speechFrames, 10))
+                    .put("peakDbfs", round(role.peakDbfs, 10));
+        });
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(root);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void onFrame(long frame, boolean speech) {
+        if (frame >= end) {
+            end = frame + 1;
+            // Make room in the ring; a role that far behind is silent for the frames counted without it
+            settle(end - speaking.length);
+        }
+        int slot = (int) (frame % speaking.length);
+        if (speech && frame >= settled && speaking[slot] < Byte.MAX_VALUE) {
+            speaking[slot]++;
+        }
+        if (roles.size() < 2) {
+            // Held until another role joins, so its first frames can still overlap these
+            return;
+        }
+        long passed = end;
+        for (RoleAnalytics role : roles.values()) {
+            passed = Math.min(passed, role.frame);
+        }
+        settle(passed);
+    }
+
+    private void settle(long upTo) {
+        for (; settled < upTo; settled++) {
+            int slot = (int) (settled % speaking.length);
+            int count = speaking[slot];
+            speaking[slot] = 0;
+            if (count > 0) {
+                talkFrames++;
+            }
+            if (count > 1) {
+                overtalkFrames++;
+                if (!overtalking) {
+                    overtalkEvents++;
+                }
+            }
+            overtalking = count > 1;
+        }
+    }
+
+    private static double toDbfs(double meanSquare) {
+        return meanSquare == 0 ? SILENCE_DBFS : Math.max(SILENCE_DBFS, 10 * Math.log10(meanSquare / FULL_SCALE_SQUARED));
+    }
+
+    private static double round(double value, int scale) {
+        return Math.round(value * scale) / (double) scale;
+    }
+
+    private final class RoleAnalytics {
+        private final ParticipantRole participantRole;
+        // Position of the frame being filled
+        private long frame;
+        private long sumSquares;
+        private int samples;
+        // Low byte of a 16-bit sample split across the chunk's buffers, -1 if none
+        private int lowByte = -1;
+        private int hangover;
+        private boolean inSpeech;
+        private long totalSamples;
+        private long frames;
+        private long speechFrames;
+        private long spurts;
+        private double meanSquareSum;
+        private double speechDbfsSum;
+        private double peakDbfs = SILENCE_DBFS;
+
+        RoleAnalytics(ParticipantRole participantRole, long frame) {
+            this.participantRole = participantRole == null ? ParticipantRole.ROLE_UNSPECIFIED : participantRole;
+            this.frame = frame;
+        }
+
+        void accept(ByteBuffer audio) {
+            if (format.formatCode() == WavFormat.FORMAT_MULAW) {
+                while (audio.hasRemaining()) {
+                    add(MULAW_TO_LINEAR[audio.get() & 0xFF]);
+                }
+                return;
+            }
+            while (audio.hasRemaining()) {
+                byte b = audio.get();
+                if (lowByte < 0) {
+                    lowByte = b & 0xFF;
+                } else {
+                    add((b << 8) | lowByte);
+                    lowByte = -1;
+                }
+            }
+        }
+
+        private void add(int sample) {
+            sumSquares += (long) sample * sample;
+            if (++samples == frameSamples) {
+                endFrame();
+            }
+        }
+
+        void flush() {
+            if (samples > 0) {
+                endFrame();
+            }
+        }
+
+        private void endFrame() {
+            double meanSquare = (double) sumSquares / samples;
+            double dbfs = toDbfs(meanSquare);
+            totalSamples += samples;
+            frames++;
+            meanSquareSum += meanSquare;
+            peakDbfs = Math.max(peakDbfs, dbfs);
+
+            boolean speech;
+            if (meanSquare >= thresholdMeanSquare) {
+                hangover = hangoverFrames;
+                speech = true;
+            } else if (hangover > 0) {
+                hangover--;
+                speech = true;
+            } else {
+                speech = false;
+            }
+            if (speech) {
+                speechFrames++;
+                speechDbfsSum += dbfs;
+                if (!inSpeech) {
+                    spurts++;
+                }
+            }
+            inSpeech = speech;
+            sumSquares = 0;
+            samples = 0;
+            onFrame(frame++, speech);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import lombok.Getter;
+
+/**
+ * The per-stream choices of media forking: how chunks are acknowledged, whether audio is uploaded in segments, how
+ * roles map onto recordings and whether speech analytics are computed. Shared by every stream of the service.
+ */
+public final class ForkPolicies {
+
+    @Getter
+    private final AckPolicy ackPolicy;
+    @Getter
+    private final SegmentPolicy segmentPolicy;
+    @Getter
+    private final ChannelLayout channelLayout;
+    @Getter
+    private final SpeechAnalytics speechAnalytics;
+
+    private ForkPolicies(AckPolicy ackPolicy, SegmentPolicy segmentPolicy, ChannelLayout channelLayout,
+                         SpeechAnalytics speechAnalytics) {
+        this.ackPolicy = ackPolicy;
+        this.segmentPolicy = segmentPolicy;
+        this.channelLayout = channelLayout;
+        this.speechAnalytics = speechAnalytics;
+    }
+
+    public static ForkPolicies of(AckPolicy ackPolicy, SegmentPolicy segmentPolicy, ChannelLayout channelLayout,
+                                  SpeechAnalytics speechAnalytics) {
+        return new ForkPolicies(ackPolicy, segmentPolicy, channelLayout, speechAnalytics);
+    }
+
+    public static ForkPolicies fromSettings() {
+        return of(AckPolicy.fromSettings(), SegmentPolicy.fromSettings(), ChannelLayout.fromSettings(), SpeechAnalytics.fromSettings());
+    }
+}
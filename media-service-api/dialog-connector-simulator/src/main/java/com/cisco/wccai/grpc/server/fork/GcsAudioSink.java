@@ -0,0 +1,42 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+
+import java.io.IOException;
+
+/**
+ * Stores recordings as objects in a Google Cloud Storage bucket, streamed through a resumable upload.
+ */
+public final class GcsAudioSink implements AudioSink {
+
+    private final Storage storage;
+    private final String bucketName;
+
+    public GcsAudioSink(Storage storage, String bucketName) {
+        this.storage = storage;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public void store(String objectName, RoleAudioBuffer recording) throws IOException {
+        BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, objectName))
+                .setContentType("audio/wav")
+                .build();
+        try (WriteChannel writer = storage.writer(blobInfo)) {
+            recording.writeTo(writer);
+        }
+    }
+
+    @Override
+    public void storeMetadata(String objectName, byte[] content, String contentType) {
+        storage.create(BlobInfo.newBuilder(BlobId.of(bucketName, objectName)).setContentType(contentType).build(), content);
+    }
+
+    @Override
+    public String describe(String objectName) {
+        return "gs://" + bucketName + "/" + objectName;
+    }
+}
@@ -0,0 +1,192 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How much forked audio all fork streams together may hold, and how fast each stream pulls frames from its client.
+ *
+ * Every recording counts its audio against the budget from the moment it is appended until the recording is
+ * stored or discarded, whether it is held in memory or in a spill file, so slow storage uses up the budget as
+ * surely as a burst of streams. Each stream requests at most {@code windowMessages} frames ahead of the ones it has
+ * processed. Once the budget is used up, new fork streams are turned away, and while finished recordings are
+ * still being stored, running streams stop requesting frames, which leaves them in the transport and pushes back on
+ * the clients through HTTP/2 flow control. Paused streams resume as soon as the stored recordings release enough
+ * audio, or once nothing is being stored anymore.
+ *
+ * The budget therefore gates admission; it cannot release audio that running streams hold themselves, which only
+ * goes when their recordings or segments are finished. That audio is bounded per stream instead: a stream holding
+ * {@code maxStreamBytes} of unfinished recordings stops requesting frames too, so all streams together hold at most
+ * the budget plus, for each stream admitted, that cap and the frames it had requested. A paused stream gets one
+ * more frame every {@code maxPauseMillis}, so retries of a failing sink cannot stall it indefinitely, and a stream
+ * at its cap slows down to that pace rather than stopping.
+ */
+public final class IntakeBudget {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IntakeBudget.class);
+    private static final IntakeBudget UNLIMITED = new IntakeBudget(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, 0);
+
+    @Getter
+    private final long maxBytes;
+    @Getter
+    private final long maxStreamBytes;
+    @Getter
+    private final int windowMessages;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong handedOff = new AtomicLong();
+    private final ConcurrentLinkedQueue<Runnable> paused = new ConcurrentLinkedQueue<>();
+    // Streams at their own cap, which released audio does not help
+    private final ConcurrentLinkedQueue<Runnable> capped = new ConcurrentLinkedQueue<>();
+    private final Counter pauses;
+
+    /**
+     * @param maxBytes       audio held by all fork recordings before intake stops
+     * @param maxStreamBytes audio held by a stream's unfinished recordings before it stops requesting frames
+     * @param windowMessages frames a stream requests ahead of the ones it has processed
+     * @param maxPauseMillis longest wait of a paused stream before it gets one more frame anyway
+     */
+    public IntakeBudget(long maxBytes, long maxStreamBytes, int windowMessages, long maxPauseMillis) {
+        this.maxBytes = Math.max(1, maxBytes);
+        this.maxStreamBytes = Math.max(1, maxStreamBytes);
+        this.windowMessages = Math.max(1, windowMessages);
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("fork_intake_budget_used_bytes", "Forked audio held by recordings, counted against the intake budget", used::get);
+        registry.gauge("fork_intake_handed_off_bytes", "Forked audio held by finished recordings waiting to be stored", handedOff::get);
+        registry.gauge("fork_intake_paused_streams", "Fork streams not requesting frames because the intake budget is used up or they reached their cap",
+                () -> paused.size() + capped.size());
+        pauses = registry.counter("fork_intake_pauses_total",
+                "Times a fork stream stopped requesting frames because the intake budget was used up or it reached its cap");
+        if (this.maxBytes < Long.MAX_VALUE || this.maxStreamBytes < Long.MAX_VALUE) {
+            ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fork-intake");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, maxPauseMillis);
+            ticker.scheduleWithFixedDelay(() -> {
+                resumeCapped();
+                resumePaused(true);
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return a budget that never stops intake, shared by everything that has no budget of its own
+     */
+    public static IntakeBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @param defaultMaxBytes the budget unless FORK_INTAKE_BUDGET_BYTES is set, sized for where the buffers keep audio
+     */
+    public static IntakeBudget fromSettings(long defaultMaxBytes) {
+        return new IntakeBudget(LoadProperties.getLongSetting("FORK_INTAKE_BUDGET_BYTES", defaultMaxBytes),
+                LoadProperties.getLongSetting("FORK_INTAKE_STREAM_MAX_BYTES", 64L * 1024 * 1024),
+                LoadProperties.getIntSetting("FORK_INTAKE_WINDOW", 32),
+                LoadProperties.getLongSetting("FORK_INTAKE_MAX_PAUSE_MS", 1000));
+    }
+
+    public boolean hasRoom() {
+        return used.get() < maxBytes;
+    }
+
+    /**
+     * @param streamBytes audio held by the stream's unfinished recordings
+     * @return whether the stream should stop requesting frames, until recordings being stored release some audio
+     *         or, at its cap, until it has waited the longest pause
+     */
+    public boolean shouldPause(long streamBytes) {
+        return streamBytes >= maxStreamBytes || isStoring();
+    }
+
+    private boolean isStoring() {
+        return !hasRoom() && handedOff.get() > 0;
+    }
+
+    public long getUsedBytes() {
+        return used.get();
+    }
+
+    void acquire(long bytes) {
+        used.addAndGet(bytes);
+    }
+
+    /**
+     * Counts audio of a finished recording as on its way to the sink.
+     */
+    void handOff(long bytes) {
+        handedOff.addAndGet(bytes);
+    }
+
+    void release(long bytes, boolean wasHandedOff) {
+        if (wasHandedOff) {
+            handedOff.addAndGet(-bytes);
+        }
+        used.addAndGet(-bytes);
+        if (!isStoring()) {
+            resumePaused(false);
+        }
+    }
+
+    /**
+     * Parks a stream that stopped requesting frames; {@code resume} runs once, on whichever thread finds that the
+     * stream need not wait anymore, or on the budget's own thread once the stream has waited the longest pause. A
+     * stream at its own cap only waits for the latter.
+     *
+     * @param streamBytes audio held by the stream's unfinished recordings
+     */
+    public void pause(Runnable resume, long streamBytes) {
+        pauses.increment();
+        if (streamBytes >= maxStreamBytes) {
+            capped.add(resume);
+            return;
+        }
+        paused.add(resume);
+        // Audio may have been released between the caller's check and now
+        if (!isStoring()) {
+            resumePaused(false);
+        }
+    }
+
+    private void resumeCapped() {
+        // Streams still at their cap pause again and wait for the next round
+        for (int waiting = capped.size(); waiting > 0; waiting--) {
+            Runnable resume = capped.poll();
+            if (resume == null) {
+                return;
+            }
+            run(resume);
+        }
+    }
+
+    private void resumePaused(boolean anyway) {
+        // Streams that pause again while being resumed wait for the next round
+        for (int waiting = paused.size(); waiting > 0 && (anyway || !isStoring()); waiting--) {
+            Runnable resume = paused.poll();
+            if (resume == null) {
+                return;
+            }
+            run(resume);
+        }
+    }
+
+    private static void run(Runnable resume) {
+        try {
+            resume.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to resume a paused fork stream", e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores recordings as files below a root directory, for on-prem deployments and for measuring fork throughput
+ * without cloud credentials.
+ *
+ * Each recording is written to a {@code .partial} sibling that is sized to the recording before the audio is written,
+ * so its length is set once rather than on every write, and then renamed into place: readers never see a
+ * half-written recording. Metadata objects are written the same way. What is forced to disk before the rename
+ * depends on the {@link FsyncPolicy}.
+ */
+public final class LocalFileAudioSink implements AudioSink {
+
+    public enum FsyncPolicy {
+        /** Leave writing back to the operating system: fastest, recordings can be lost on a crash */
+        NONE,
+        /** Force the file's content before it is renamed into place */
+        DATA,
+        /** Force content and metadata, and the directory entry after the rename */
+        FULL
+    }
+
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    private final Path root;
+    private final FsyncPolicy fsyncPolicy;
+
+    public LocalFileAudioSink(Path root, FsyncPolicy fsyncPolicy) {
+        this.root = root.toAbsolutePath().normalize();
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    @Override
+    public void store(String objectName, RoleAudioBuffer recording) throws IOException {
+        write(objectName, recording.getWavBytes(), recording::writeTo);
+    }
+
+    @Override
+    public void storeMetadata(String objectName, byte[] content, String contentType) throws IOException {
+        write(objectName, content.length, channel -> {
+            ByteBuffer source = ByteBuffer.wrap(content);
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        });
+    }
+
+    private void write(String objectName, long size, ContentWriter content) throws IOException {
+        Path target = resolve(objectName);
+        Files.createDirectories(target.getParent());
+        Path partial = target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Extend the file to its final length up front; the positional write leaves the position at 0
+            if (size > 0) {
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            content.writeTo(channel);
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                channel.force(fsyncPolicy == FsyncPolicy.FULL);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (fsyncPolicy == FsyncPolicy.FULL) {
+            try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+                directory.force(true);
+            }
+        }
+    }
+
+    private interface ContentWriter {
+        void writeTo(WritableByteChannel channel) throws IOException;
+    }
+
+    @Override
+    public String describe(String objectName) {
+        return root.resolve(objectName).toString();
+    }
+
+    private Path resolve(String objectName) throws IOException {
+        // Names contain client-supplied conversation and role ids, which must not lead outside the root
+        Path target = root.resolve(objectName).normalize();
+        if (!target.startsWith(root) || target.equals(root)) {
+            throw new IOException("Object name " + objectName + " resolves outside of " + root);
+        }
+        return target;
+    }
+}
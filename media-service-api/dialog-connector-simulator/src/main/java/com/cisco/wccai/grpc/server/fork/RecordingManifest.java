@@ -0,0 +1,130 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Names the time segments of a forked conversation and lists them, per role and in order, for the manifest stored
+ * when the stream ends.
+ *
+ * Each entry records where the segment starts in the role's audio, how long it is and whether it was stored, so a
+ * consumer can tell a gap left by a segment that was given up from silence. Segments of a stereo recording carry 2
+ * channels, whose roles are listed as {@code stereoChannels}. Not thread-safe: segments are added by the stream's
+ * handler, the JSON is built once all of them are stored or given up.
+ */
+public final class RecordingManifest {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final String conversationId;
+    private final WavFormat format;
+    private final int segmentSeconds;
+    private final Map<String, List<Segment>> roles = new LinkedHashMap<>();
+    private List<String> stereoChannels;
+
+    public RecordingManifest(String conversationId, WavFormat format, int segmentSeconds) {
+        this.conversationId = conversationId;
+        this.format = format;
+        this.segmentSeconds = segmentSeconds;
+    }
+
+    /**
+     * @return the object name of the role's next segment
+     */
+    public String nextSegmentName(String roleId) {
+        int sequence = roles.getOrDefault(roleId, List.of()).size();
+        return String.format("audio/%s/%s/%06d.wav", conversationId, roleId, sequence);
+    }
+
+    /**
+     * Records the role's next segment, named by {@link #nextSegmentName(String)}.
+     *
+     * @param stored completes when the segment is stored, exceptionally when it was given up
+     */
+    public void addSegment(String roleId, String objectName, WavFormat segmentFormat, long audioBytes,
+                           CompletableFuture<Void> stored) {
+        List<Segment> segments = roles.computeIfAbsent(roleId, id -> new ArrayList<>());
+        long offsetBytes = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).endBytes();
+        segments.add(new Segment(segments.size(), objectName, segmentFormat, offsetBytes, audioBytes, stored));
+    }
+
+    /**
+     * @param channelRoles role ids of the left and right channel of the stereo recording
+     */
+    public void setStereoChannels(List<String> channelRoles) {
+        this.stereoChannels = channelRoles;
+    }
+
+    public boolean isEmpty() {
+        return roles.isEmpty();
+    }
+
+    public String getObjectName() {
+        return String.format("audio/%s/manifest.json", conversationId);
+    }
+
+    /**
+     * @return completes, never exceptionally, once every segment added so far is stored or given up
+     */
+    public CompletableFuture<Void> whenSettled() {
+        CompletableFuture<?>[] uploads = roles.values().stream()
+                .flatMap(List::stream)
+                .map(segment -> segment.stored().exceptionally(e -> null))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(uploads);
+    }
+
+    public byte[] toJson() {
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        root.put("conversationId", conversationId);
+        root.put("formatCode", format.formatCode());
+        root.put("sampleRateHertz", format.sampleRate());
+        root.put("bitsPerSample", format.bitsPerSample());
+        root.put("segmentSeconds", segmentSeconds);
+        if (stereoChannels != null) {
+            ArrayNode channelNodes = root.putArray("stereoChannels");
+            stereoChannels.forEach(channelNodes::add);
+        }
+        ObjectNode roleNodes = root.putObject("roles");
+        roles.forEach((roleId, segments) -> {
+            ArrayNode segmentNodes = roleNodes.putArray(roleId);
+            for (Segment segment : segments) {
+                segmentNodes.addObject()
+                        .put("sequence", segment.sequence())
+                        .put("object", segment.objectName())
+                        .put("channels", segment.format().channels())
+                        .put("offsetMillis", segment.toMillis(segment.offsetBytes()))
+                        .put("durationMillis", segment.toMillis(segment.audioBytes()))
+                        .put("audioBytes", segment.audioBytes())
+                        .put("stored", segment.stored().isDone() && !segment.stored().isCompletedExceptionally());
+            }
+        });
+        try {
+            return OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(root);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Segment(int sequence, String objectName, WavFormat format, long offsetBytes, long audioBytes,
+                           CompletableFuture<Void> stored) {
+        long endBytes() {
+            return offsetBytes + audioBytes;
+        }
+
+        long toMillis(long bytes) {
+            return bytes * 1000 / format.byteRate();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.Histogram;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.server.interceptors.CallLogContext;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores finished recordings in an {@link AudioSink} off the gRPC callback threads.
+ *
+ * Recordings are stored by a small fixed pool, so the roles of one conversation upload in parallel and a slow
+ * sink ties up these threads only. A failed attempt is retried after an exponential backoff with full jitter, so
+ * recordings that failed together do not retry together. Every recording counts towards the backlog from hand-off
+ * until it is stored or given up; once the backlog reaches its limit, {@link #isBacklogFull()} tells the service
+ * to turn new fork streams away, while recordings of streams already running are still accepted. Metadata objects,
+ * such as segment manifests, are stored the same way. The threads are daemons, so a server that stops must
+ * {@link #shutdown(long) drain} the backlog first: its streams were acknowledged before their recordings were stored.
+ */
+public final class RecordingUploader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordingUploader.class);
+
+    private final AudioSink sink;
+    private final ScheduledThreadPoolExecutor executor;
+    private final int maxBacklog;
+    private final int maxAttempts;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicLong backlogBytes = new AtomicLong();
+    // The uploads in the backlog, to name the ones abandoned at shutdown
+    private final Set<Upload> pending = ConcurrentHashMap.newKeySet();
+    private final Object drained = new Object();
+    private final Histogram uploadMillis;
+    private final Counter retries;
+    private final Counter failures;
+
+    /**
+     * @param threads         recordings stored at once
+     * @param maxBacklog      recordings waiting or being stored before new fork streams are turned away
+     * @param maxAttempts     attempts per recording before it is given up
+     * @param retryBaseMillis backoff cap of the first retry, doubled for every further one
+     * @param retryMaxMillis  largest backoff cap
+     */
+    public RecordingUploader(AudioSink sink, int threads, int maxBacklog, int maxAttempts, long retryBaseMillis, long retryMaxMillis) {
+        this.sink = sink;
+        this.maxBacklog = Math.max(1, maxBacklog);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBaseMillis = Math.max(1, retryBaseMillis);
+        this.retryMaxMillis = Math.max(this.retryBaseMillis, retryMaxMillis);
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "fork-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("fork_upload_backlog", "Fork recordings handed off and not yet stored or given up", backlog::get);
+        registry.gauge("fork_upload_backlog_bytes", "Size of the fork recordings in the upload backlog", backlogBytes::get);
+        uploadMillis = registry.histogram("fork_upload_ms", "Time from hand-off until a fork recording was stored, retries included",
+                Histogram.latencyMillisBuckets());
+        retries = registry.counter("fork_upload_retries_total", "Failed fork recording uploads that were retried");
+        failures = registry.counter("fork_upload_failures_total", "Fork recordings given up after the last attempt failed");
+        LOGGER.info("Fork recordings are uploaded by {} threads, backlog limit {}, {} attempts", Math.max(1, threads),
+                this.maxBacklog, this.maxAttempts);
+    }
+
+    public static RecordingUploader fromSettings(AudioSink sink) {
+        return new RecordingUploader(sink,
+                LoadProperties.getIntSetting("FORK_UPLOAD_THREADS", 4),
+                LoadProperties.getIntSetting("FORK_UPLOAD_MAX_BACKLOG", 256),
+                LoadProperties.getIntSetting("FORK_UPLOAD_MAX_ATTEMPTS", 5),
+                LoadProperties.getLongSetting("FORK_UPLOAD_RETRY_BASE_MS", 500),
+                LoadProperties.getLongSetting("FORK_UPLOAD_RETRY_MAX_MS", 30000));
+    }
+
+    public boolean isBacklogFull() {
+        return backlog.get() >= maxBacklog;
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    /**
+     * Takes over a {@link RoleAudioBuffer#finish() finished} recording: stores it under the given name and closes it
+     * once it is stored or given up.
+     *
+     * @return completes when the recording is stored, exceptionally when it was given up
+     */
+    public CompletableFuture<Void> upload(String objectName, RoleAudioBuffer recording) {
+        return submit(objectName, recording.getWavBytes(), () -> sink.store(objectName, recording), recording::close);
+    }
+
+    /**
+     * Stores a small object that describes recordings, with the same retries as recordings.
+     *
+     * @return completes when the object is stored, exceptionally when it was given up
+     */
+    public CompletableFuture<Void> uploadMetadata(String objectName, byte[] content, String contentType) {
+        return submit(objectName, content.length, () -> sink.storeMetadata(objectName, content, contentType), () -> { });
+    }
+
+    private CompletableFuture<Void> submit(String objectName, long bytes, StoreAction action, Runnable release) {
+        CompletableFuture<Void> stored = new CompletableFuture<>();
+        backlog.incrementAndGet();
+        backlogBytes.addAndGet(bytes);
+        Upload upload = new Upload(objectName, action, release, bytes, stored, CallLogContext.current(), System.nanoTime());
+        pending.add(upload);
+        try {
+            executor.execute(upload);
+        } catch (RejectedExecutionException e) {
+            LOGGER.error("Cannot upload {}, the uploader is shut down", sink.describe(objectName));
+            upload.finish(e);
+        }
+        return stored;
+    }
+
+    /**
+     * Stops taking uploads; recordings already handed off are still stored.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Stops the uploader once every recording handed off is stored or given up, waiting at most the timeout. Until
+     * then failed attempts are still retried, and objects that depend on stored recordings, such as manifests, are
+     * still taken. Uploads left when the timeout passes are abandoned, and logged.
+     *
+     * @return whether the backlog drained in time
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        LOGGER.info("Draining {} fork uploads before stopping, for at most {} ms", backlog.get(), timeoutMillis);
+        synchronized (drained) {
+            long remaining;
+            while (backlog.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+            }
+        }
+        executor.shutdownNow();
+        if (pending.isEmpty()) {
+            LOGGER.info("Fork upload backlog drained");
+            return true;
+        }
+        LOGGER.error("Abandoning {} fork uploads, {} bytes, not stored within {} ms", pending.size(), backlogBytes.get(), timeoutMillis);
+        for (Upload upload : pending) {
+            LOGGER.error("Abandoned {} after {} attempts", sink.describe(upload.objectName), upload.attempts);
+        }
+        return false;
+    }
+
+    private long backoffMillis(int failedAttempts) {
+        long cap = Math.min(retryMaxMillis, retryBaseMillis << Math.min(failedAttempts - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private interface StoreAction {
+        void store() throws IOException;
+    }
+
+    private final class Upload implements Runnable {
+        private final String objectName;
+        private final StoreAction action;
+        private final Runnable release;
+        private final long bytes;
+        private final CompletableFuture<Void> stored;
+        private final CallLogContext logContext;
+        private final long handedOffNanos;
+        private int attempts;
+
+        private Upload(String objectName, StoreAction action, Runnable release, long bytes, CompletableFuture<Void> stored,
+                       CallLogContext logContext, long handedOffNanos) {
+            this.objectName = objectName;
+            this.action = action;
+            this.release = release;
+            this.bytes = bytes;
+            this.stored = stored;
+            this.logContext = logContext;
+            this.handedOffNanos = handedOffNanos;
+        }
+
+        @Override
+        public void run() {
+            if (logContext != null) {
+                logContext.apply();
+            }
+            try {
+                attempts++;
+                action.store();
+                uploadMillis.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - handedOffNanos));
+                LOGGER.info("Successfully uploaded {}", sink.describe(objectName));
+                finish(null);
+            } catch (Exception e) {
+                if (attempts < maxAttempts && !executor.isShutdown()) {
+                    long delay = backoffMillis(attempts);
+                    retries.increment();
+                    LOGGER.warn("Attempt {} to upload {} failed, retrying in {} ms: {}", attempts, sink.describe(objectName), delay, e.toString());
+                    try {
+                        executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException rejected) {
+                        // The uploader stopped since the check above
+                        failures.increment();
+                        LOGGER.error("Giving up on {} after {} attempts, the uploader stopped", sink.describe(objectName), attempts, e);
+                        finish(e);
+                    }
+                } else {
+                    failures.increment();
+                    LOGGER.error("Giving up on {} after {} attempts", sink.describe(objectName), attempts, e);
+                    finish(e);
+                }
+            } finally {
+                if (logContext != null) {
+                    logContext.clear();
+                }
+            }
+        }
+
+        private void finish(Exception failure) {
+            release.run();
+            // Completed first, so an upload that depends on this one, like a manifest, joins the backlog before it can drain
+            if (failure == null) {
+                stored.complete(null);
+            } else {
+                stored.completeExceptionally(failure);
+            }
+            pending.remove(this);
+            backlogBytes.addAndGet(-bytes);
+            if (backlog.decrementAndGet() == 0) {
+                synchronized (drained) {
+                    drained.notifyAll();
+                }
+            }
+        }
+    }
+}
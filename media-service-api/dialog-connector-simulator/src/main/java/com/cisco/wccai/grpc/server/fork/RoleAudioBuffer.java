@@ -0,0 +1,44 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.google.protobuf.ByteString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The audio of one role of a forked conversation, collected until the stream ends and then written out as a
+ * WAV file.
+ *
+ * A buffer is appended to, {@link #finish() finished} once, written out any number of times and finally
+ * {@link #close() closed}, which releases its memory or temp file. It is used by one stream at a time.
+ */
+public interface RoleAudioBuffer extends Closeable {
+
+    void append(ByteString audio) throws IOException;
+
+    /**
+     * @return the audio bytes appended so far, without the header
+     */
+    long getAudioBytes();
+
+    /**
+     * Completes the WAV file: nothing can be appended afterwards.
+     */
+    void finish() throws IOException;
+
+    /**
+     * @return the size of the finished WAV file, header included
+     */
+    default long getWavBytes() {
+        return WavFormat.HEADER_BYTES + getAudioBytes();
+    }
+
+    /**
+     * Writes the finished WAV file, header first, to the channel.
+     */
+    void writeTo(WritableByteChannel target) throws IOException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,108 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the per-role buffers of forked conversations.
+ *
+ * <ul>
+ *   <li>MEMORY - the whole recording stays in memory until the stream ends, in chunks from a shared {@link AudioChunkPool}</li>
+ *   <li>SPILL - a small heap window in front of a per-role temp file; heap use does not grow with call duration</li>
+ * </ul>
+ *
+ * Every buffer counts its audio against the {@link IntakeBudget} shared by all fork streams until it is closed, and
+ * against the factory it came from until it is finished: {@link #forStream()} gives each stream a factory of its own,
+ * so the stream can tell how much audio its unfinished recordings hold.
+ */
+public final class RoleAudioBuffers {
+
+    public enum BufferMode {
+        MEMORY, SPILL
+    }
+
+    @Getter
+    private final BufferMode mode;
+    private final Path spillDirectory;
+    private final int spillWindowBytes;
+    private final AudioChunkPool chunkPool;
+    @Getter
+    private final IntakeBudget intakeBudget;
+    private final AtomicLong heldBytes = new AtomicLong();
+
+    private RoleAudioBuffers(BufferMode mode, Path spillDirectory, int spillWindowBytes, AudioChunkPool chunkPool,
+                             IntakeBudget intakeBudget) {
+        this.mode = mode;
+        this.spillDirectory = spillDirectory;
+        this.spillWindowBytes = spillWindowBytes;
+        this.chunkPool = chunkPool;
+        this.intakeBudget = intakeBudget;
+    }
+
+    public static RoleAudioBuffers of(BufferMode mode, Path spillDirectory, int spillWindowBytes) {
+        return of(mode, spillDirectory, spillWindowBytes, AudioChunkPool.fromSettings());
+    }
+
+    public static RoleAudioBuffers of(BufferMode mode, Path spillDirectory, int spillWindowBytes, AudioChunkPool chunkPool) {
+        return of(mode, spillDirectory, spillWindowBytes, chunkPool, IntakeBudget.unlimited());
+    }
+
+    public static RoleAudioBuffers of(BufferMode mode, Path spillDirectory, int spillWindowBytes, AudioChunkPool chunkPool,
+                                      IntakeBudget intakeBudget) {
+        return new RoleAudioBuffers(mode, spillDirectory, Math.max(1024, spillWindowBytes), chunkPool, intakeBudget);
+    }
+
+    public static RoleAudioBuffers fromSettings() {
+        BufferMode mode = LoadProperties.getEnumSetting("FORK_BUFFER_MODE", BufferMode.class, BufferMode.MEMORY);
+        Path directory = Path.of(LoadProperties.getSetting("FORK_SPILL_DIR", System.getProperty("java.io.tmpdir")));
+        return of(mode, directory, LoadProperties.getIntSetting("FORK_SPILL_WINDOW_BYTES", 65536),
+                AudioChunkPool.fromSettings(), IntakeBudget.fromSettings(defaultBudgetBytes(mode, directory)));
+    }
+
+    /**
+     * @return half the maximum heap in MEMORY mode, and half the space left for spill files in SPILL mode, where the
+     *         heap only holds their windows
+     */
+    private static long defaultBudgetBytes(BufferMode mode, Path spillDirectory) {
+        if (mode != BufferMode.SPILL) {
+            return Runtime.getRuntime().maxMemory() / 2;
+        }
+        // The directory is created with the first spill file
+        Path existing = spillDirectory.toAbsolutePath();
+        while (existing != null && !Files.isDirectory(existing)) {
+            existing = existing.getParent();
+        }
+        long usable = existing == null ? 0 : existing.toFile().getUsableSpace();
+        return usable > 0 ? usable / 2 : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return a factory for the buffers of one stream, sharing this one's settings and budget
+     */
+    public RoleAudioBuffers forStream() {
+        return new RoleAudioBuffers(mode, spillDirectory, spillWindowBytes, chunkPool, intakeBudget);
+    }
+
+    /**
+     * @return audio held by the buffers from this factory that are not finished yet
+     */
+    public long getHeldBytes() {
+        return heldBytes.get();
+    }
+
+    public RoleAudioBuffer newBuffer(WavFormat format) throws IOException {
+        RoleAudioBuffer buffer;
+        if (mode == BufferMode.SPILL) {
+            Files.createDirectories(spillDirectory);
+            buffer = new SpillingRoleAudioBuffer(format, spillDirectory, spillWindowBytes);
+        } else {
+            buffer = new ChunkedRoleAudioBuffer(format, chunkPool);
+        }
+        return new BudgetedRoleAudioBuffer(buffer, intakeBudget, heldBytes);
+    }
+}
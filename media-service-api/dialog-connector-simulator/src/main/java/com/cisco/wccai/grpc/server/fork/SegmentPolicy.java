@@ -0,0 +1,50 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import lombok.Getter;
+
+/**
+ * Whether forked audio is uploaded as one recording per role when the stream ends, or in time segments while the
+ * call is still running.
+ *
+ * With a segment length, each role's recording is closed as a self-contained WAV file at the first chunk boundary
+ * after that much audio and handed to the uploader, and a new one is started. Segments are stored as
+ * {@code audio/<conversationId>/<roleId>/<sequence>.wav}; when the stream ends, a manifest listing them can be
+ * stored as {@code audio/<conversationId>/manifest.json}. Audio is then available downstream, and lost on a crash,
+ * one segment at a time, and the memory a role needs no longer grows with the call.
+ */
+public final class SegmentPolicy {
+
+    @Getter
+    private final int segmentSeconds;
+    @Getter
+    private final boolean writeManifest;
+
+    private SegmentPolicy(int segmentSeconds, boolean writeManifest) {
+        this.segmentSeconds = Math.max(0, segmentSeconds);
+        this.writeManifest = writeManifest;
+    }
+
+    /**
+     * @param segmentSeconds audio per segment, 0 to upload one recording per role when the stream ends
+     */
+    public static SegmentPolicy of(int segmentSeconds, boolean writeManifest) {
+        return new SegmentPolicy(segmentSeconds, writeManifest);
+    }
+
+    public static SegmentPolicy fromSettings() {
+        return of(LoadProperties.getIntSetting("FORK_SEGMENT_SECONDS", 0),
+                LoadProperties.getBooleanSetting("FORK_SEGMENT_MANIFEST", true));
+    }
+
+    public boolean isEnabled() {
+        return segmentSeconds > 0;
+    }
+
+    /**
+     * @return audio bytes after which a segment in this format is closed
+     */
+    public long segmentBytes(WavFormat format) {
+        return (long) format.byteRate() * segmentSeconds;
+    }
+}
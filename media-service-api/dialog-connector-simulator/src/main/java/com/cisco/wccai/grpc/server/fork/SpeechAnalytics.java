@@ -0,0 +1,68 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import lombok.Getter;
+
+/**
+ * Whether talk time, silence, overtalk and energy of a forked conversation are computed while its frames arrive,
+ * and where the summary goes.
+ *
+ * <ul>
+ *   <li>NONE - no analytics</li>
+ *   <li>OBJECT - the summary is stored next to the recordings when the stream ends</li>
+ *   <li>RESPONSE - the summary is sent to the client as the last response of the stream</li>
+ * </ul>
+ *
+ * Each role's audio is cut into frames of {@code frameMillis}; a frame is speech when its energy reaches
+ * {@code thresholdDbfs}, or when speech ended less than {@code hangoverMillis} before it, so short pauses within a
+ * sentence do not split it. See {@link ConversationAnalytics}.
+ */
+public final class SpeechAnalytics {
+
+    public enum Output {
+        NONE, OBJECT, RESPONSE
+    }
+
+    @Getter
+    private final Output output;
+    @Getter
+    private final int frameMillis;
+    @Getter
+    private final double thresholdDbfs;
+    @Getter
+    private final int hangoverMillis;
+
+    private SpeechAnalytics(Output output, int frameMillis, double thresholdDbfs, int hangoverMillis) {
+        this.output = output;
+        this.frameMillis = Math.max(1, frameMillis);
+        this.thresholdDbfs = thresholdDbfs;
+        this.hangoverMillis = Math.max(0, hangoverMillis);
+    }
+
+    /**
+     * @param thresholdDbfs  frame energy, in dB relative to full scale, from which a frame is speech
+     * @param hangoverMillis how long a role still counts as speaking after its energy drops below the threshold
+     */
+    public static SpeechAnalytics of(Output output, int frameMillis, double thresholdDbfs, int hangoverMillis) {
+        return new SpeechAnalytics(output, frameMillis, thresholdDbfs, hangoverMillis);
+    }
+
+    public static SpeechAnalytics fromSettings() {
+        return of(LoadProperties.getEnumSetting("FORK_ANALYTICS", Output.class, Output.NONE),
+                LoadProperties.getIntSetting("FORK_ANALYTICS_FRAME_MS", 20),
+                LoadProperties.getDoubleSetting("FORK_VAD_THRESHOLD_DBFS", -40),
+                LoadProperties.getIntSetting("FORK_VAD_HANGOVER_MS", 200));
+    }
+
+    public boolean isEnabled() {
+        return output != Output.NONE;
+    }
+
+    /**
+     * @param format the stream's mono format
+     * @return the analytics of a new stream, null with NONE
+     */
+    public ConversationAnalytics newConversation(String conversationId, WavFormat format) {
+        return isEnabled() ? new ConversationAnalytics(conversationId, format, this) : null;
+    }
+}
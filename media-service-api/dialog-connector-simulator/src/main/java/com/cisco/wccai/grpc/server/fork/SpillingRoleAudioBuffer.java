@@ -0,0 +1,95 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.google.protobuf.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps only a small window on the heap and spills the recording to a temp file, so heap use per role stays
+ * the same however long the call runs.
+ *
+ * The file starts with room for the header, which is written in place once the audio length is known, so the
+ * finished file is a complete WAV file that is streamed to its destination without being read onto the heap.
+ * It is opened with DELETE_ON_CLOSE and disappears when the buffer is closed.
+ */
+final class SpillingRoleAudioBuffer implements RoleAudioBuffer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillingRoleAudioBuffer.class);
+
+    private final WavFormat format;
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer window;
+    private long audioBytes;
+
+    SpillingRoleAudioBuffer(WavFormat format, Path directory, int windowBytes) throws IOException {
+        this.format = format;
+        this.file = Files.createTempFile(directory, "fork-", ".wav");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        this.channel.position(WavFormat.HEADER_BYTES);
+        this.window = ByteBuffer.allocate(windowBytes);
+    }
+
+    @Override
+    public void append(ByteString data) throws IOException {
+        int size = data.size();
+        if (size > window.remaining()) {
+            spill();
+        }
+        if (size > window.capacity()) {
+            // Larger than the whole window: write it through
+            ByteBuffer source = data.asReadOnlyByteBuffer();
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        } else {
+            data.copyTo(window);
+        }
+        audioBytes += size;
+    }
+
+    @Override
+    public long getAudioBytes() {
+        return audioBytes;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        spill();
+        format.writeHeader(channel, audioBytes);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel target) throws IOException {
+        long size = getWavBytes();
+        long position = 0;
+        while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete spill file {}", file, e);
+        }
+    }
+
+    private void spill() throws IOException {
+        window.flip();
+        while (window.hasRemaining()) {
+            channel.write(window);
+        }
+        window.clear();
+    }
+}
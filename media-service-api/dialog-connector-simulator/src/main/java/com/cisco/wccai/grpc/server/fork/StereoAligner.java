@@ -0,0 +1,246 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.ParticipantRole;
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interleaves two roles of a forked conversation into one 2-channel recording, placing each frame by its audio
+ * timestamp.
+ *
+ * Each channel has a window of audio not written yet, both starting at the same sample position and prefilled with
+ * silence. A frame is copied into its channel's window at its timestamp, relative to the first timestamp of the
+ * stream. A frame without a timestamp, or one within {@value #CONTIGUOUS_MILLIS} ms of where the channel's previous
+ * frame ended, continues that channel seamlessly, so jitter in the timestamps does not cut the audio. Audio is
+ * written to the recording, interleaved, once it is more than the jitter delay behind the newest audio of either
+ * channel: a frame arriving up to that late still lands in place, and whatever a channel did not receive by then,
+ * such as a lost frame or a muted leg, is written as silence. Audio arriving later than that is dropped. A timestamp
+ * more than {@value #MAX_GAP_SECONDS} s away from the audio around it is taken for a clock jump rather than a gap: the
+ * frame continues its channel and later timestamps are taken relative to it.
+ *
+ * CALLER is the left channel and AGENT the right one; roles without a participant role take the free channels in
+ * the order they arrive. Not thread-safe: used by one stream's handler.
+ */
+public final class StereoAligner implements Closeable {
+
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final int CONTIGUOUS_MILLIS = 10;
+    private static final int MAX_GAP_SECONDS = 60;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int LEFT = 0;
+    private static final int RIGHT = 1;
+
+    private final WavFormat format;
+    private final RoleAudioBuffers buffers;
+    private final int sampleBytes;
+    private final byte silence;
+    private final long jitterSamples;
+    private final long contiguousSamples;
+    private final long maxGapSamples;
+    private final String[] roles = new String[2];
+    private final byte[][] windows = new byte[2][];
+    // Sample position after the last frame of each channel
+    private final long[] channelEnds = new long[2];
+    private final Counter lateBytes;
+    // Sample position of the start of the windows, and of the end of the newest audio of either channel
+    private long written;
+    private long newest;
+    private long baseNanos = NO_TIMESTAMP;
+    private byte[] interleaved = new byte[0];
+    private RoleAudioBuffer recording;
+
+    StereoAligner(WavFormat monoFormat, int jitterMillis, RoleAudioBuffers buffers) {
+        this.format = monoFormat.withChannels(2);
+        this.buffers = buffers;
+        this.sampleBytes = monoFormat.blockAlign();
+        this.silence = monoFormat.silence();
+        this.jitterSamples = (long) monoFormat.sampleRate() * jitterMillis / 1000;
+        this.contiguousSamples = (long) monoFormat.sampleRate() * CONTIGUOUS_MILLIS / 1000;
+        this.maxGapSamples = (long) monoFormat.sampleRate() * MAX_GAP_SECONDS;
+        int capacity = (int) Math.max(jitterSamples, monoFormat.sampleRate() / 50) * sampleBytes;
+        for (int channel = LEFT; channel <= RIGHT; channel++) {
+            windows[channel] = new byte[capacity];
+            Arrays.fill(windows[channel], silence);
+        }
+        lateBytes = MetricsRegistry.getInstance().counter("fork_stereo_late_bytes_total",
+                "Forked audio dropped by the stereo jitter buffer because it arrived after its position was written");
+    }
+
+    /**
+     * @return the 2-channel format of the recordings
+     */
+    public WavFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Assigns the role a channel when it first appears.
+     *
+     * @return the role's channel, -1 if both channels belong to other roles
+     */
+    public int channelOf(String roleId, ParticipantRole role) {
+        for (int channel = LEFT; channel <= RIGHT; channel++) {
+            if (roleId.equals(roles[channel])) {
+                return channel;
+            }
+        }
+        int preferred = role == ParticipantRole.CALLER ? LEFT : role == ParticipantRole.AGENT ? RIGHT : -1;
+        if (preferred >= 0 && roles[preferred] == null) {
+            roles[preferred] = roleId;
+            return preferred;
+        }
+        for (int channel = LEFT; channel <= RIGHT; channel++) {
+            if (roles[channel] == null) {
+                roles[channel] = roleId;
+                return channel;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the role ids of the left and right channel, null for a channel no role was assigned
+     */
+    public List<String> getChannelRoles() {
+        return Arrays.asList(roles.clone());
+    }
+
+    /**
+     * @param timestampNanos the frame's audio timestamp in nanoseconds since the epoch, or {@link #NO_TIMESTAMP}
+     */
+    public void append(int channel, long timestampNanos, ByteString audio) throws IOException {
+        int samples = audio.size() / sampleBytes;
+        if (samples == 0) {
+            return;
+        }
+        // Without a timestamp, a leg that joins late or fell behind the other one by more than the jitter delay
+        // continues where the recording is, rather than being dropped as late
+        long position = Math.max(channelEnds[channel], written);
+        if (timestampNanos != NO_TIMESTAMP) {
+            long stamped = baseNanos == NO_TIMESTAMP ? 0 : toSamples(timestampNanos - baseNanos);
+            boolean clockJump = stamped > Math.max(newest, position) + maxGapSamples || stamped < written - maxGapSamples;
+            if (baseNanos == NO_TIMESTAMP || clockJump) {
+                // The frame continues its channel and anchors the timestamps after it
+                baseNanos = timestampNanos - position * NANOS_PER_SECOND / format.sampleRate();
+            } else if (Math.abs(stamped - position) > contiguousSamples) {
+                position = stamped;
+            }
+        }
+        long end = position + samples;
+        channelEnds[channel] = end;
+
+        // Make room without writing out the frame's own position
+        emit(Math.min(end - jitterSamples, position));
+        int late = (int) Math.min(samples, Math.max(0, written - position));
+        if (late > 0) {
+            lateBytes.add((long) late * sampleBytes);
+        }
+        if (late < samples) {
+            ensureWindow(end - written);
+            audio.substring(late * sampleBytes, samples * sampleBytes)
+                    .copyTo(windows[channel], (int) (position + late - written) * sampleBytes);
+            newest = Math.max(newest, end);
+        }
+        emit(newest - jitterSamples);
+    }
+
+    /**
+     * @return audio bytes in the current recording
+     */
+    public long getAudioBytes() {
+        return recording == null ? 0 : recording.getAudioBytes();
+    }
+
+    /**
+     * Hands over the current recording, for a segment; audio still in the jitter buffer goes to the next one.
+     *
+     * @return the recording, null if nothing was written since the last one
+     */
+    public RoleAudioBuffer takeRecording() {
+        RoleAudioBuffer taken = recording;
+        recording = null;
+        return taken;
+    }
+
+    /**
+     * Writes out everything still in the jitter buffer, at the end of the stream, and hands over the recording.
+     *
+     * @return the recording, null if nothing was written since the last one
+     */
+    public RoleAudioBuffer drain() throws IOException {
+        emit(newest);
+        return takeRecording();
+    }
+
+    @Override
+    public void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    private long toSamples(long nanos) {
+        // In whole seconds first, so a far-off timestamp cannot overflow
+        return Math.floorDiv(nanos, NANOS_PER_SECOND) * format.sampleRate()
+                + Math.floorMod(nanos, NANOS_PER_SECOND) * format.sampleRate() / NANOS_PER_SECOND;
+    }
+
+    private void emit(long upTo) throws IOException {
+        int capacity = windows[LEFT].length / sampleBytes;
+        while (written < upTo) {
+            int samples = (int) Math.min(upTo - written, capacity);
+            int bytes = samples * sampleBytes;
+            if (interleaved.length < 2 * bytes) {
+                interleaved = new byte[2 * bytes];
+            }
+            byte[] left = windows[LEFT];
+            byte[] right = windows[RIGHT];
+            int out = 0;
+            for (int in = 0; in < bytes; in += sampleBytes) {
+                for (int b = 0; b < sampleBytes; b++) {
+                    interleaved[out++] = left[in + b];
+                }
+                for (int b = 0; b < sampleBytes; b++) {
+                    interleaved[out++] = right[in + b];
+                }
+            }
+            if (recording == null) {
+                recording = buffers.newBuffer(format);
+            }
+            // Wrapped rather than copied: append copies the audio before it returns
+            recording.append(UnsafeByteOperations.unsafeWrap(interleaved, 0, out));
+
+            // Shift what is left of the windows to their start; beyond the newest audio they hold silence already
+            int valid = (int) Math.min(capacity, Math.max(0, newest - written)) * sampleBytes;
+            for (byte[] window : windows) {
+                if (valid > bytes) {
+                    System.arraycopy(window, bytes, window, 0, valid - bytes);
+                }
+                Arrays.fill(window, Math.max(0, valid - bytes), valid, silence);
+            }
+            written += samples;
+        }
+    }
+
+    private void ensureWindow(long samples) {
+        int bytes = (int) samples * sampleBytes;
+        if (bytes <= windows[LEFT].length) {
+            return;
+        }
+        int capacity = Math.max(bytes, 2 * windows[LEFT].length);
+        for (int channel = LEFT; channel <= RIGHT; channel++) {
+            int previous = windows[channel].length;
+            windows[channel] = Arrays.copyOf(windows[channel], capacity);
+            Arrays.fill(windows[channel], previous, capacity, silence);
+        }
+    }
+}
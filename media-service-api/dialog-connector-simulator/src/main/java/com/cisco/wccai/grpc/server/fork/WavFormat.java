@@ -0,0 +1,88 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The format of a forked WAV recording and its 44-byte canonical header.
+ *
+ * @param formatCode    WAV format code, 1 for PCM and 7 for G.711 u-law
+ * @param channels      interleaved channels
+ * @param sampleRate    samples per second and channel
+ * @param bitsPerSample bits of one sample of one channel
+ */
+public record WavFormat(int formatCode, int channels, int sampleRate, int bitsPerSample) {
+
+    public static final int HEADER_BYTES = 44;
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_MULAW = 7;
+
+    /**
+     * @return the format of audio with the given encoding, or null if WAV cannot carry it
+     */
+    public static WavFormat of(AudioEncoding encoding, int sampleRate, int channels) {
+        return switch (encoding) {
+            case MULAW -> new WavFormat(FORMAT_MULAW, channels, sampleRate, 8);
+            case LINEAR16 -> new WavFormat(FORMAT_PCM, channels, sampleRate, 16);
+            default -> null;
+        };
+    }
+
+    public int blockAlign() {
+        return channels * bitsPerSample / 8;
+    }
+
+    public int byteRate() {
+        return sampleRate * blockAlign();
+    }
+
+    /**
+     * @return the format with the same encoding and sample rate, and the given number of channels
+     */
+    public WavFormat withChannels(int channels) {
+        return new WavFormat(formatCode, channels, sampleRate, bitsPerSample);
+    }
+
+    /**
+     * @return the byte that, repeated, encodes silence: 0xFF for u-law, whose zero level is 0xFF, and 0 for PCM
+     */
+    public byte silence() {
+        return formatCode == FORMAT_MULAW ? (byte) 0xFF : 0;
+    }
+
+    /**
+     * @return the header of a file with {@code audioDataLength} bytes of audio, ready to be read
+     */
+    public ByteBuffer header(long audioDataLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt((int) (audioDataLength + HEADER_BYTES - 8));
+        buffer.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        buffer.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(16); // Sub-chunk size for PCM
+        buffer.putShort((short) formatCode);
+        buffer.putShort((short) channels);
+        buffer.putInt(sampleRate);
+        buffer.putInt(byteRate());
+        buffer.putShort((short) blockAlign());
+        buffer.putShort((short) bitsPerSample);
+        buffer.put("data".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt((int) audioDataLength);
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the header at the start of a file whose audio follows it, without moving the channel's position.
+     */
+    public void writeHeader(FileChannel channel, long audioDataLength) throws IOException {
+        ByteBuffer header = header(audioDataLength);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.Histogram;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Authorization that never blocks the thread setting up the call.
+ *
+ * A token already in the {@link VerifiedTokenCache} starts the call at once. Any other token is validated on a
+ * small dedicated executor, so a cold key fetch or an auth storm ties up those threads instead of the transport
+ * and application threads. Meanwhile the call is deferred: the first few request messages (the caller's first
+ * audio frames) are pulled one at a time into a bounded buffer and replayed, in order, to the real listener once
+ * the token is valid. At most one message is requested ahead when the real call takes over, so a service that
+ * requests messages itself gets only what it asked for. An invalid token closes the call with UNAUTHENTICATED and the buffered messages are dropped.
+ */
+public class AsyncAuthorizationServerInterceptor implements ServerInterceptor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncAuthorizationServerInterceptor.class);
+    private static final Metadata.Key<String> AUTHORIZATION_KEY = Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final TokenAuthorizer tokenAuthorizer;
+    private final ThreadPoolExecutor validationExecutor;
+    private final int maxBufferedMessages;
+    private final AtomicInteger pendingCalls = new AtomicInteger();
+    private final Histogram deferralMillis;
+    private final Counter backlogRejected;
+
+    public AsyncAuthorizationServerInterceptor() {
+        this(new TokenAuthorizer());
+    }
+
+    public AsyncAuthorizationServerInterceptor(TokenAuthorizer tokenAuthorizer) {
+        this(tokenAuthorizer,
+                LoadProperties.getIntSetting("AUTH_VALIDATION_THREADS", 4),
+                LoadProperties.getIntSetting("AUTH_VALIDATION_QUEUE_CAPACITY", 10000),
+                LoadProperties.getIntSetting("AUTH_MAX_BUFFERED_MESSAGES", 8));
+    }
+
+    /**
+     * @param validationThreads   threads validating tokens that are not cached yet
+     * @param queueCapacity       calls waiting for a validation thread before new ones are rejected with UNAVAILABLE
+     * @param maxBufferedMessages request messages read ahead per call while its token is validated
+     */
+    public AsyncAuthorizationServerInterceptor(TokenAuthorizer tokenAuthorizer, int validationThreads, int queueCapacity,
+                                               int maxBufferedMessages) {
+        this.tokenAuthorizer = tokenAuthorizer;
+        this.maxBufferedMessages = Math.max(0, maxBufferedMessages);
+        int threads = Math.max(1, validationThreads);
+        this.validationExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), daemonThreads());
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("auth_pending_calls", "Calls deferred while their token is validated", pendingCalls::get);
+        deferralMillis = registry.histogram("auth_deferral_ms", "Time a call waited for token validation before it was started or rejected",
+                Histogram.latencyMillisBuckets());
+        backlogRejected = registry.counter("auth_backlog_rejected_total",
+                "Calls rejected with UNAVAILABLE because the validation queue was full");
+        LOGGER.info("Asynchronous authorization with {} validation threads, queue {}, {} buffered messages per call",
+                threads, Math.max(1, queueCapacity), this.maxBufferedMessages);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> serverCall, Metadata metadata,
+                                                                 ServerCallHandler<ReqT, RespT> serverCallHandler) {
+        if (!TokenAuthorizer.requiresAuthorization(serverCall.getMethodDescriptor().getFullMethodName())) {
+            return serverCallHandler.startCall(serverCall, metadata);
+        }
+        String token = AuthorizationHandlerFactory.extractToken(metadata.get(AUTHORIZATION_KEY));
+        if (tokenAuthorizer.isVerified(token)) {
+            CallLogContext logContext = CallLogContext.current();
+            if (logContext != null) {
+                logContext.setOrgId(AuthorizationServerInterceptor.DEFAULT_ORG_ID);
+            }
+            return serverCallHandler.startCall(serverCall, metadata);
+        }
+
+        DeferredListener<ReqT> deferred = new DeferredListener<>(serverCall, maxBufferedMessages);
+        long startNanos = System.nanoTime();
+        // The service must see the call's own context (deadline, cancellation, log context) when it starts on the validation thread
+        Runnable validation = Context.current().wrap(() -> {
+            CallLogContext logContext = CallLogContext.current();
+            if (logContext != null) {
+                logContext.apply();
+            }
+            try {
+                validateAndStart(serverCall, metadata, serverCallHandler, deferred, token, logContext);
+            } finally {
+                if (logContext != null) {
+                    logContext.clear();
+                }
+                pendingCalls.decrementAndGet();
+                deferralMillis.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            }
+        });
+        pendingCalls.incrementAndGet();
+        try {
+            validationExecutor.execute(validation);
+        } catch (RejectedExecutionException e) {
+            pendingCalls.decrementAndGet();
+            backlogRejected.increment();
+            LOGGER.warn("Rejecting {}: {} calls already waiting for token validation",
+                    serverCall.getMethodDescriptor().getBareMethodName(), validationExecutor.getQueue().size());
+            serverCall.close(Status.UNAVAILABLE.withDescription("Authorization backlog is full, retry later"), new Metadata());
+            return new ServerCall.Listener<>() {
+            };
+        }
+        // Read the first messages ahead into the buffer while the token is checked, the next one as each arrives
+        if (maxBufferedMessages > 0) {
+            serverCall.request(1);
+        }
+        return deferred;
+    }
+
+    private <ReqT, RespT> void validateAndStart(ServerCall<ReqT, RespT> serverCall, Metadata metadata,
+                                                ServerCallHandler<ReqT, RespT> serverCallHandler, DeferredListener<ReqT> deferred,
+                                                String token, CallLogContext logContext) {
+        boolean isAuthorized;
+        String failure = "Token validation failed.";
+        try {
+            isAuthorized = tokenAuthorizer.authorize(token);
+        } catch (Exception e) {
+            LOGGER.error("Authorization failed: {}", e.getMessage());
+            isAuthorized = false;
+            failure = "Authorization failed: " + e.getMessage();
+        }
+
+        if (deferred.isCancelled()) {
+            LOGGER.info("Call was cancelled while its token was validated");
+            return;
+        }
+        if (!isAuthorized) {
+            serverCall.close(Status.UNAUTHENTICATED.withDescription(failure), new Metadata());
+            return;
+        }
+        LOGGER.info("Token validation successful.");
+        if (logContext != null) {
+            logContext.setOrgId(AuthorizationServerInterceptor.DEFAULT_ORG_ID);
+        }
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = serverCallHandler.startCall(serverCall, metadata);
+        } catch (RuntimeException e) {
+            // What the transport does when startCall throws on its own thread
+            serverCall.close(Status.fromThrowable(e), new Metadata());
+            return;
+        }
+        if (logContext != null) {
+            // Buffered messages have passed the log context listener already, which may have learned the conversation_id
+            logContext.apply();
+        }
+        deferred.start(listener);
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "auth-validation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Queues the listener callbacks that arrive before the real call is started and replays them in order once it
+     * is; afterwards it only passes them through. Each message queued requests the next until the buffer is full.
+     */
+    private static final class DeferredListener<ReqT> extends ServerCall.Listener<ReqT> {
+        private final ServerCall<ReqT, ?> call;
+        private final int maxBufferedMessages;
+        // Only touched by onMessage, which the transport never runs concurrently
+        private int bufferedMessages;
+        private List<Consumer<ServerCall.Listener<ReqT>>> pending = new ArrayList<>();
+        private ServerCall.Listener<ReqT> delegate;
+        private volatile boolean passThrough;
+        private volatile boolean cancelled;
+
+        DeferredListener(ServerCall<ReqT, ?> call, int maxBufferedMessages) {
+            this.call = call;
+            this.maxBufferedMessages = maxBufferedMessages;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void start(ServerCall.Listener<ReqT> listener) {
+            synchronized (this) {
+                delegate = listener;
+            }
+            while (true) {
+                List<Consumer<ServerCall.Listener<ReqT>>> events;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        pending = null;
+                        passThrough = true;
+                        return;
+                    }
+                    events = pending;
+                    pending = new ArrayList<>();
+                }
+                // Replayed outside the lock; callbacks arriving meanwhile queue up behind these
+                events.forEach(event -> event.accept(listener));
+            }
+        }
+
+        /**
+         * @return whether the event was queued, rather than passed to the started call
+         */
+        private boolean deliver(Consumer<ServerCall.Listener<ReqT>> event) {
+            if (!passThrough) {
+                synchronized (this) {
+                    if (!passThrough) {
+                        pending.add(event);
+                        return true;
+                    }
+                }
+            }
+            event.accept(delegate);
+            return false;
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            if (deliver(listener -> listener.onMessage(message)) && ++bufferedMessages < maxBufferedMessages) {
+                call.request(1);
+            }
+        }
+
+        @Override
+        public void onHalfClose() {
+            deliver(ServerCall.Listener::onHalfClose);
+        }
+
+        @Override
+        public void onCancel() {
+            cancelled = true;
+            deliver(ServerCall.Listener::onCancel);
+        }
+
+        @Override
+        public void onComplete() {
+            deliver(ServerCall.Listener::onComplete);
+        }
+
+        @Override
+        public void onReady() {
+            deliver(ServerCall.Listener::onReady);
+        }
+    }
+}
@@ -17,8 +17,8 @@ public class AuthorizationHandlerFactory {
         AuthTokenType tokenType = getAuthTokenType(token);  // Determine token type
         switch (tokenType) {
             case JWT:
-                LOGGER.info("Found JWT Token");
-                return new JWTAuthorizationHandler();
+                LOGGER.debug("Found JWT Token");
+                return JWTAuthorizationHandler.getInstance();
             default:
                 throw new AccessTokenException("Invalid authorization token");
         }
@@ -28,45 +28,38 @@ public class AuthorizationHandlerFactory {
     private static AuthTokenType getAuthTokenType(String token) {
         if (token == null || token.isEmpty()) {
             return AuthTokenType.NOAUTH;
-        } else if (isJWT(token)) {
+        } else if (parseJWT(token) != null) {
             return AuthTokenType.JWT;
         } else {
             return AuthTokenType.OAUTH2;
         }
     }
 
+    /**
+     * Parses the token as a JWT, so callers can detect the type and validate with a single parse.
+     *
+     * @return the parsed token, or null when it is not a JWT
+     */
     // We simply Cannot rely on 3 .(DOTs),as event OAUTH token can have 3 .(DOT) in it
     // Since JWT is also OAuth token, we need to check the token_type claim to differentiate between JWT and OAUTH token
-    private static boolean isJWT(String token) {
+    public static SignedJWT parseJWT(String token) {
         try {
-            var tokenType = SignedJWT.parse(token).getJWTClaimsSet().getClaim("token_type");
+            SignedJWT signedJWT = SignedJWT.parse(token);
+            var tokenType = signedJWT.getJWTClaimsSet().getClaim("token_type");
             // For JWS (Not jwt) token, token_type claim should not be present
-            return tokenType == null || !tokenType.toString().equalsIgnoreCase("Bearer");
+            return tokenType == null || !tokenType.toString().equalsIgnoreCase("Bearer") ? signedJWT : null;
         } catch (Exception ex) {
-            return false;
+            return null;
         }
     }
 
     // Token extraction logic
     public static String extractToken(String authHeader) {
-        // Determine the token type
-        AuthTokenType tokenType = getAuthTokenType(authHeader);
-
-        switch (tokenType) {
-            case OAUTH2:
-                if (authHeader != null) {
-                    return authHeader;
-                } else {
-                    throw new IllegalArgumentException("Invalid OAuth2 authorization header format");
-                }
-            case JWT:
-                // Return JWT as is
-                return authHeader;
-            case NOAUTH:
-                // Return an empty string for no authorization
-                return "";
-            default:
-                throw new IllegalArgumentException("Invalid authorization header format or token type");
+        // JWT and OAuth2 tokens are both returned as is, so there is no need to parse the token here
+        if (authHeader == null || authHeader.isEmpty()) {
+            // Return an empty string for no authorization
+            return "";
         }
+        return authHeader;
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import io.grpc.Context;
+import org.slf4j.MDC;
+
+/**
+ * The log context of one gRPC call: its trackingId, org_id and conversation_id.
+ *
+ * Each call gets its own instance, carried in the call's {@link io.grpc.Context}, so concurrent calls never share
+ * mutable state. {@link CallLogContextServerInterceptor} puts the values into the MDC around every listener
+ * callback and clears them afterwards; code running on other threads with the call's context can do the same
+ * with {@link #apply()} and {@link #clear()}.
+ */
+public final class CallLogContext {
+
+    public static final String TRACKING_ID = "trackingId";
+    public static final String ORG_ID = "org_id";
+    public static final String CONVERSATION_ID = "conversation_id";
+
+    static final Context.Key<CallLogContext> KEY = Context.key("call-log-context");
+
+    private final String trackingId;
+    // Learned after the call started: org_id once the token is valid, conversation_id from the first request
+    private volatile String orgId;
+    private volatile String conversationId;
+
+    CallLogContext(String trackingId, String conversationId) {
+        this.trackingId = trackingId;
+        this.conversationId = conversationId;
+    }
+
+    /**
+     * @return the log context of the call the current thread works for, or null outside of a call
+     */
+    public static CallLogContext current() {
+        return KEY.get();
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    public String getOrgId() {
+        return orgId;
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setOrgId(String orgId) {
+        this.orgId = orgId;
+        putIfNonNull(ORG_ID, orgId);
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+        putIfNonNull(CONVERSATION_ID, conversationId);
+    }
+
+    /**
+     * Puts this call's values into the MDC of the current thread.
+     */
+    public void apply() {
+        putIfNonNull(TRACKING_ID, trackingId);
+        putIfNonNull(ORG_ID, orgId);
+        putIfNonNull(CONVERSATION_ID, conversationId);
+    }
+
+    /**
+     * Removes this call's keys from the MDC of the current thread, so a pooled thread does not log the next
+     * call's work with them.
+     */
+    public void clear() {
+        MDC.remove(TRACKING_ID);
+        MDC.remove(ORG_ID);
+        MDC.remove(CONVERSATION_ID);
+    }
+
+    private static void putIfNonNull(String key, String value) {
+        if (value != null) {
+            MDC.put(key, value);
+        }
+    }
+}
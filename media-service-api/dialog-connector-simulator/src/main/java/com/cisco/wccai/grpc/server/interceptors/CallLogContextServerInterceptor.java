@@ -0,0 +1,115 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Gives every call its own {@link CallLogContext} and applies it to the MDC around each listener callback.
+ *
+ * The trackingId (and a conversation_id, if the client sends one) come from the headers; otherwise the
+ * conversation_id is taken from the first request message that has a {@code conversation_id} field.
+ * Register it after the authorization interceptor, so the context already exists while the token is validated.
+ */
+public class CallLogContextServerInterceptor implements ServerInterceptor {
+
+    private static final Metadata.Key<String> TRACKING_ID_KEY = Metadata.Key.of(CallLogContext.TRACKING_ID, Metadata.ASCII_STRING_MARSHALLER);
+    private static final Metadata.Key<String> CONVERSATION_ID_KEY = Metadata.Key.of(CallLogContext.CONVERSATION_ID, Metadata.ASCII_STRING_MARSHALLER);
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> serverCall, Metadata metadata,
+                                                                 ServerCallHandler<ReqT, RespT> serverCallHandler) {
+        CallLogContext logContext = new CallLogContext(metadata.get(TRACKING_ID_KEY), metadata.get(CONVERSATION_ID_KEY));
+        Context context = Context.current().withValue(CallLogContext.KEY, logContext);
+        ServerCall.Listener<ReqT> delegate;
+        logContext.apply();
+        try {
+            delegate = Contexts.interceptCall(context, serverCall, metadata, serverCallHandler);
+        } finally {
+            logContext.clear();
+        }
+        return new LogContextListener<>(delegate, logContext);
+    }
+
+    private static final class LogContextListener<ReqT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+        private final CallLogContext logContext;
+
+        private LogContextListener(ServerCall.Listener<ReqT> delegate, CallLogContext logContext) {
+            super(delegate);
+            this.logContext = logContext;
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            if (logContext.getConversationId() == null) {
+                String conversationId = conversationIdOf(message);
+                if (conversationId != null) {
+                    logContext.setConversationId(conversationId);
+                }
+            }
+            logContext.apply();
+            try {
+                super.onMessage(message);
+            } finally {
+                logContext.clear();
+            }
+        }
+
+        @Override
+        public void onHalfClose() {
+            logContext.apply();
+            try {
+                super.onHalfClose();
+            } finally {
+                logContext.clear();
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            logContext.apply();
+            try {
+                super.onCancel();
+            } finally {
+                logContext.clear();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            logContext.apply();
+            try {
+                super.onComplete();
+            } finally {
+                logContext.clear();
+            }
+        }
+
+        @Override
+        public void onReady() {
+            logContext.apply();
+            try {
+                super.onReady();
+            } finally {
+                logContext.clear();
+            }
+        }
+
+        private static String conversationIdOf(Object message) {
+            if (message instanceof Message protoMessage) {
+                Descriptors.FieldDescriptor field = protoMessage.getDescriptorForType().findFieldByName(CallLogContext.CONVERSATION_ID);
+                if (field != null && field.getJavaType() == Descriptors.FieldDescriptor.JavaType.STRING) {
+                    String conversationId = (String) protoMessage.getField(field);
+                    return conversationId.isEmpty() ? null : conversationId;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.cisco.wcc.ccai.media.v1.ConversationAudioGrpc;
+import com.cisco.wcc.ccai.media.v1.VoiceVirtualAgentGrpc;
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive concurrency limit for the streaming methods (ProcessCallerInput and StreamConversationAudio).
+ *
+ * Every request message is timed while the service processes it. Once per window the average frame latency
+ * (short RTT) is compared with its long-term average (long RTT, the latency of an unloaded server), gradient style:
+ * <pre>
+ *   gradient = clamp(tolerance * longRtt / shortRtt, 0.5, 1)
+ *   limit    = smoothed(limit * gradient + sqrt(limit))
+ * </pre>
+ * so the limit grows while frames stay as fast as usual and shrinks as soon as they slow down. Streams beyond the
+ * limit are rejected immediately with RESOURCE_EXHAUSTED instead of degrading the audio of every active call.
+ * With enforcement turned off, the limit is only computed and exported: streams beyond it are admitted and counted,
+ * so the limit can be tuned against real load before it turns streams away. Streams in flight are counted either way.
+ * This interceptor must be the outermost one so rejected calls cost no authorization work.
+ */
+public class ConcurrencyLimitServerInterceptor implements ServerInterceptor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrencyLimitServerInterceptor.class);
+
+    public static final Set<String> DEFAULT_LIMITED_METHODS = Set.of(
+            VoiceVirtualAgentGrpc.getProcessCallerInputMethod().getFullMethodName(),
+            ConversationAudioGrpc.getStreamConversationAudioMethod().getFullMethodName());
+
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.2;
+    // The long RTT averages over this many windows, about a minute with the default window.
+    private static final int LONG_RTT_WINDOWS = 60;
+
+    private final Set<String> limitedMethods;
+    private final boolean enforced;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder windowLatencyNanos = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicLong windowEndNanos;
+    private final Counter rejected;
+    private final Counter overLimit;
+    private volatile double limit;
+    private double longRttNanos;
+
+    public ConcurrencyLimitServerInterceptor() {
+        this(DEFAULT_LIMITED_METHODS,
+                LoadProperties.getBooleanSetting("CONCURRENCY_LIMIT_ENFORCED", true),
+                LoadProperties.getIntSetting("CONCURRENCY_LIMIT_INITIAL", 2000),
+                LoadProperties.getIntSetting("CONCURRENCY_LIMIT_MIN", 20),
+                LoadProperties.getIntSetting("CONCURRENCY_LIMIT_MAX", 5000),
+                LoadProperties.getDoubleSetting("CONCURRENCY_LIMIT_TOLERANCE", 2.0),
+                LoadProperties.getLongSetting("CONCURRENCY_LIMIT_WINDOW_MS", 1000));
+    }
+
+    /**
+     * @param limitedMethods full method names that count against the limit, every other method passes through
+     * @param enforced       whether streams beyond the limit are rejected, rather than only counted
+     * @param initialLimit   concurrent streams accepted before the first latency window completes
+     * @param minLimit       the limit never drops below this
+     * @param maxLimit       the limit never grows above this
+     * @param tolerance      how much slower than the long-term frame latency is still treated as unloaded
+     * @param windowMillis   how often the limit is recalculated
+     */
+    public ConcurrencyLimitServerInterceptor(Set<String> limitedMethods, boolean enforced, int initialLimit, int minLimit,
+                                             int maxLimit, double tolerance, long windowMillis) {
+        this.limitedMethods = limitedMethods;
+        this.enforced = enforced;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = Math.max(1.0, tolerance);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10, windowMillis));
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.windowEndNanos = new AtomicLong(System.nanoTime() + windowNanos);
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("grpc_server_concurrency_limit", "Current adaptive limit on concurrent streaming calls", this::getLimit);
+        registry.gauge("grpc_server_concurrency_in_flight", "Streaming calls currently counted against the limit", inFlight::get);
+        rejected = registry.counter("grpc_server_concurrency_rejected_total",
+                "Streaming calls rejected with RESOURCE_EXHAUSTED because the limit was reached");
+        overLimit = registry.counter("grpc_server_concurrency_over_limit_total",
+                "Streaming calls admitted beyond the limit because it is not enforced");
+        LOGGER.info("Concurrency limit for {} ({}): initial {}, min {}, max {}, tolerance {}, window {} ms",
+                limitedMethods, enforced ? "enforced" : "computed only", (int) limit, this.minLimit, this.maxLimit, this.tolerance, TimeUnit.NANOSECONDS.toMillis(windowNanos));
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> serverCall, Metadata metadata,
+                                                                 ServerCallHandler<ReqT, RespT> serverCallHandler) {
+        if (!limitedMethods.contains(serverCall.getMethodDescriptor().getFullMethodName())) {
+            return serverCallHandler.startCall(serverCall, metadata);
+        }
+        if (!tryAcquire()) {
+            rejected.increment();
+            LOGGER.warn("Rejecting {}: {} streams in flight, limit {}",
+                    serverCall.getMethodDescriptor().getBareMethodName(), inFlight.get(), getLimit());
+            serverCall.close(Status.RESOURCE_EXHAUSTED.withDescription("Server is at its concurrent stream limit, retry on another instance"),
+                    new Metadata());
+            return new ServerCall.Listener<>() {
+            };
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        };
+        try {
+            return new LimitedCallListener<>(serverCallHandler.startCall(serverCall, metadata), release);
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    private boolean tryAcquire() {
+        if (!enforced) {
+            if (inFlight.incrementAndGet() > (int) limit) {
+                overLimit.increment();
+            }
+            return true;
+        }
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void onFrameProcessed(long latencyNanos) {
+        windowLatencyNanos.add(latencyNanos);
+        windowSamples.increment();
+        long now = System.nanoTime();
+        long windowEnd = windowEndNanos.get();
+        // Exactly one thread wins the CAS and closes the window.
+        if (now - windowEnd >= 0 && windowEndNanos.compareAndSet(windowEnd, now + windowNanos)) {
+            long samples = windowSamples.sumThenReset();
+            long latency = windowLatencyNanos.sumThenReset();
+            if (samples > 0) {
+                updateLimit((double) latency / samples);
+            }
+        }
+    }
+
+    private synchronized void updateLimit(double shortRttNanos) {
+        if (longRttNanos == 0) {
+            longRttNanos = shortRttNanos;
+        } else {
+            longRttNanos += (shortRttNanos - longRttNanos) / LONG_RTT_WINDOWS;
+            // After a long overload the baseline is inflated; let it recover quickly once frames are fast again.
+            if (longRttNanos / shortRttNanos > 2) {
+                longRttNanos *= 0.95;
+            }
+        }
+        double current = limit;
+        // With fewer than half the limit in use the latency says nothing about what more streams would cost.
+        if (inFlight.get() < current / 2) {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+        double target = current * gradient + Math.sqrt(current);
+        double next = Math.min(maxLimit, Math.max(minLimit, current * (1 - SMOOTHING) + target * SMOOTHING));
+        if ((int) next != (int) current) {
+            LOGGER.debug("Concurrency limit {} -> {} (frame latency {} us, baseline {} us)", (int) current, (int) next,
+                    (long) (shortRttNanos / 1000), (long) (longRttNanos / 1000));
+        }
+        limit = next;
+    }
+
+    /**
+     * Times each request message and returns the permit once the call is over.
+     */
+    private final class LimitedCallListener<ReqT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+        private final Runnable release;
+
+        private LimitedCallListener(ServerCall.Listener<ReqT> delegate, Runnable release) {
+            super(delegate);
+            this.release = release;
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            long start = System.nanoTime();
+            try {
+                super.onMessage(message);
+            } finally {
+                onFrameProcessed(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            try {
+                super.onCancel();
+            } finally {
+                release.run();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                super.onComplete();
+            } finally {
+                release.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Supplies the parsed signing keys of each JWKS endpoint without making request threads wait on the network.
+ *
+ * <ul>
+ *   <li>Reads are lock-free: the current {@link JwksKeyStore} of an endpoint is a volatile reference.</li>
+ *   <li>Fetches are single-flight per endpoint and run on the async {@link HttpClient}; concurrent callers share
+ *   the one in-flight fetch.</li>
+ *   <li>Keys are refreshed ahead of time, once {@code refreshAheadRatio} of the Cache-Control max-age has passed,
+ *   while callers keep using the current keys.</li>
+ *   <li>Expired keys are still served for up to {@code maxStaleMillis} while a refresh is attempted, so a
+ *   throttling identity broker (429) does not fail authentication. Retry-After is honored between attempts.</li>
+ * </ul>
+ * Only a cold start, keys staler than {@code maxStaleMillis} or a token signed with an unknown {@code kid}
+ * (a key rotation) wait for a fetch.
+ */
+public class JwksKeyProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwksKeyProvider.class);
+
+    private static final long DEFAULT_CACHE_DURATION = TimeUnit.MINUTES.toMillis(60); // Cache duration of 60 minutes
+    private static final int MAX_RETRY_ATTEMPTS = 3;
+    private static final long INITIAL_RETRY_DELAY_MS = 1000; // 1 second
+
+    private final double refreshAheadRatio;
+    private final long maxStaleMillis;
+    private final long fetchTimeoutMillis;
+    // A token with an unknown kid triggers at most one fetch per endpoint in this interval
+    private final long unknownKidRefreshMillis;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private final Counter fetchesOk;
+    private final Counter fetchesThrottled;
+    private final Counter fetchesFailed;
+    private final Counter staleServed;
+
+    public JwksKeyProvider() {
+        this(LoadProperties.getDoubleSetting("JWKS_REFRESH_AHEAD_RATIO", 0.8),
+                LoadProperties.getLongSetting("JWKS_MAX_STALE_MS", TimeUnit.HOURS.toMillis(24)),
+                LoadProperties.getLongSetting("JWKS_FETCH_TIMEOUT_MS", 5000),
+                LoadProperties.getLongSetting("JWKS_UNKNOWN_KID_REFRESH_MS", TimeUnit.SECONDS.toMillis(30)));
+    }
+
+    /**
+     * @param refreshAheadRatio share of the max-age after which keys are refreshed in the background
+     * @param maxStaleMillis    how long past expiry keys are still served while they cannot be refreshed
+     * @param fetchTimeoutMillis connect and response timeout of a single fetch
+     * @param unknownKidRefreshMillis minimum time between two fetches triggered by tokens with an unknown kid
+     */
+    public JwksKeyProvider(double refreshAheadRatio, long maxStaleMillis, long fetchTimeoutMillis, long unknownKidRefreshMillis) {
+        this.refreshAheadRatio = Math.min(1.0, Math.max(0.1, refreshAheadRatio));
+        this.maxStaleMillis = Math.max(0, maxStaleMillis);
+        this.fetchTimeoutMillis = Math.max(100, fetchTimeoutMillis);
+        this.unknownKidRefreshMillis = Math.max(0, unknownKidRefreshMillis);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(this.fetchTimeoutMillis))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        fetchesOk = registry.counter("auth_jwks_fetches_total", "JWKS fetch attempts by outcome", "result", "ok");
+        fetchesThrottled = registry.counter("auth_jwks_fetches_total", "JWKS fetch attempts by outcome", "result", "throttled");
+        fetchesFailed = registry.counter("auth_jwks_fetches_total", "JWKS fetch attempts by outcome", "result", "error");
+        staleServed = registry.counter("auth_jwks_stale_served_total", "Validations that used expired keys while a refresh was pending");
+    }
+
+    /**
+     * Returns the keys of a JWKS endpoint, fetching them only when no usable keys are cached.
+     *
+     * @param jwksUrl the JWKS endpoint of the token's issuer
+     * @param kid     the key id from the token header, may be null
+     */
+    public JwksKeyStore getKeyStore(String jwksUrl, String kid) throws AccessTokenException {
+        Endpoint endpoint = endpoints.computeIfAbsent(jwksUrl, Endpoint::new);
+        CachedKeys current = endpoint.current;
+        long now = System.currentTimeMillis();
+        if (current == null) {
+            return await(endpoint, refresh(endpoint));
+        }
+        if (kid != null && !current.keyStore.containsKid(kid)) {
+            // Read in the reverse order refresh() writes them: a fetch is in flight before lastFetchStartedAt moves,
+            // and its keys are published before it stops being in flight. So either this caller joins that fetch,
+            // sees its keys, or the fetch it saw started long enough ago to start another.
+            long lastFetchStartedAt = endpoint.lastFetchStartedAt;
+            CompletableFuture<CachedKeys> inFlight = endpoint.inFlight.get();
+            CachedKeys latest = endpoint.current;
+            if (latest.keyStore.containsKid(kid)) {
+                return latest.keyStore;
+            }
+            // Tokens with the new kid that arrive while its refresh is in flight wait for that same fetch
+            if (inFlight != null || System.currentTimeMillis() - lastFetchStartedAt >= unknownKidRefreshMillis) {
+                LOGGER.info("Token signed with unknown kid {}, refreshing keys from {}", kid, jwksUrl);
+                try {
+                    return await(endpoint, inFlight != null ? inFlight : refresh(endpoint));
+                } catch (AccessTokenException e) {
+                    return current.keyStore;
+                }
+            }
+        }
+        if (!current.keyStore.isExpired(now)) {
+            if (now >= current.refreshAt) {
+                refresh(endpoint);
+            }
+            return current.keyStore;
+        }
+        if (now < current.keyStore.getExpirationAt() + maxStaleMillis) {
+            refresh(endpoint);
+            staleServed.increment();
+            return current.keyStore;
+        }
+        return await(endpoint, refresh(endpoint));
+    }
+
+    /**
+     * Puts keys for an endpoint straight into the cache, so benchmarks and local runs can validate
+     * locally minted tokens without reaching the identity broker.
+     */
+    void seed(String jwksUrl, PublicKeyResponse publicKeyResponse, long cacheDurationMillis) {
+        long now = System.currentTimeMillis();
+        endpoints.computeIfAbsent(jwksUrl, Endpoint::new).current = cachedKeys(publicKeyResponse, now, cacheDurationMillis);
+    }
+
+    // Starts a fetch unless one is already running or the endpoint asked us to back off; never blocks.
+    private CompletableFuture<CachedKeys> refresh(Endpoint endpoint) {
+        while (true) {
+            CompletableFuture<CachedKeys> inFlight = endpoint.inFlight.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            long now = System.currentTimeMillis();
+            if (now < endpoint.retryNotBefore) {
+                return CompletableFuture.failedFuture(new AccessTokenException(
+                        "Backing off from " + endpoint.url + " for " + (endpoint.retryNotBefore - now) + " ms"));
+            }
+            CompletableFuture<CachedKeys> fetch = new CompletableFuture<>();
+            if (!endpoint.inFlight.compareAndSet(null, fetch)) {
+                continue;
+            }
+            endpoint.lastFetchStartedAt = now;
+            CompletableFuture<CachedKeys> attempts;
+            try {
+                attempts = fetch(endpoint, 1, INITIAL_RETRY_DELAY_MS);
+            } catch (RuntimeException e) {
+                // Such as a malformed URL; failing the fetch still clears inFlight, so callers are not left waiting on it
+                fetchesFailed.increment();
+                attempts = CompletableFuture.failedFuture(e);
+            }
+            attempts.whenComplete((keys, error) -> {
+                if (error == null) {
+                    endpoint.current = keys;
+                    endpoint.retryNotBefore = 0;
+                } else {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    long backoff = cause instanceof ThrottledException throttled ? throttled.retryAfterMillis : INITIAL_RETRY_DELAY_MS;
+                    endpoint.retryNotBefore = System.currentTimeMillis() + backoff;
+                    LOGGER.error("Error while fetching public keys from {}, next attempt in {} ms: {}", endpoint.url, backoff, cause.getMessage());
+                }
+                endpoint.inFlight.set(null);
+                if (error == null) {
+                    fetch.complete(keys);
+                } else {
+                    fetch.completeExceptionally(error);
+                }
+            });
+            return fetch;
+        }
+    }
+
+    private CompletableFuture<CachedKeys> fetch(Endpoint endpoint, int attempt, long retryDelay) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint.url))
+                .timeout(Duration.ofMillis(fetchTimeoutMillis))
+                .GET()
+                .build();
+        CompletableFuture<HttpResponse<byte[]>> sent = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        // Connect failures, timeouts and TLS errors end the request without any response to count below
+        sent.whenComplete((response, error) -> {
+            if (error != null) {
+                fetchesFailed.increment();
+            }
+        });
+        return sent.thenCompose(response -> {
+            int responseCode = response.statusCode();
+            if (responseCode == 200) {
+                fetchesOk.increment();
+                LOGGER.info("Public keys fetched successfully from {} on attempt {}", endpoint.url, attempt);
+                return CompletableFuture.completedFuture(parse(response));
+            }
+            if (responseCode == 429) {
+                fetchesThrottled.increment();
+                // Retry-After takes priority over exponential backoff; jitter keeps instances from retrying in lockstep
+                long waitTimeMs = parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null), retryDelay)
+                        + ThreadLocalRandom.current().nextLong(retryDelay / 4 + 1);
+                if (attempt >= MAX_RETRY_ATTEMPTS) {
+                    return CompletableFuture.failedFuture(new ThrottledException(endpoint.url, MAX_RETRY_ATTEMPTS, waitTimeMs));
+                }
+                LOGGER.warn("Rate limit (429) from {} on attempt {}, retrying in {} ms", endpoint.url, attempt, waitTimeMs);
+                return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(waitTimeMs, TimeUnit.MILLISECONDS))
+                        .thenCompose(ignored -> fetch(endpoint, attempt + 1, retryDelay * 2));
+            }
+            fetchesFailed.increment();
+            return CompletableFuture.failedFuture(new AccessTokenException("Failed : HTTP error code : " + responseCode
+                    + " and error message: " + new String(response.body())));
+        });
+    }
+
+    private CachedKeys parse(HttpResponse<byte[]> response) {
+        try {
+            PublicKeyResponse publicKeyResponse = objectMapper.readValue(response.body(), PublicKeyResponse.class);
+            long cacheDuration = parseCacheDuration(response.headers().firstValue("Cache-Control").orElse(null));
+            return cachedKeys(publicKeyResponse, System.currentTimeMillis(), cacheDuration);
+        } catch (IOException e) {
+            fetchesFailed.increment();
+            throw new UncheckedIOException("Unreadable JWKS response", e);
+        }
+    }
+
+    private CachedKeys cachedKeys(PublicKeyResponse publicKeyResponse, long now, long cacheDuration) {
+        // Parse the keys once here rather than on every validation
+        JwksKeyStore keyStore = JwksKeyStore.from(publicKeyResponse, now + cacheDuration);
+        return new CachedKeys(keyStore, now + (long) (cacheDuration * refreshAheadRatio));
+    }
+
+    private JwksKeyStore await(Endpoint endpoint, CompletableFuture<CachedKeys> fetch) throws AccessTokenException {
+        // Long enough for every attempt of one fetch, including the backoff between them
+        long maxWaitMillis = MAX_RETRY_ATTEMPTS * fetchTimeoutMillis + 2 * INITIAL_RETRY_DELAY_MS * ((1L << MAX_RETRY_ATTEMPTS) - 1);
+        try {
+            return fetch.get(maxWaitMillis, TimeUnit.MILLISECONDS).keyStore;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccessTokenException("Interrupted while fetching public keys", e);
+        } catch (ExecutionException e) {
+            throw new AccessTokenException("Error while fetching public keys from " + endpoint.url, e.getCause());
+        } catch (TimeoutException e) {
+            throw new AccessTokenException("Timed out after " + maxWaitMillis + " ms fetching public keys from " + endpoint.url, e);
+        }
+    }
+
+    private static long parseRetryAfter(String retryAfterHeader, long defaultMillis) {
+        if (retryAfterHeader == null || retryAfterHeader.isEmpty()) {
+            return defaultMillis;
+        }
+        // Retry-After can be in seconds (integer) or HTTP date format, we handle the seconds format (most common for 429)
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfterHeader.trim()));
+        } catch (NumberFormatException e) {
+            return defaultMillis;
+        }
+    }
+
+    /**
+     * Parses the Cache-Control header to extract cache duration.
+     * Looks for max-age directive and converts to milliseconds.
+     * Falls back to default DEFAULT_CACHE_DURATION if header is missing or invalid.
+     *
+     * @param cacheControl The Cache-Control header value
+     * @return Cache duration in milliseconds
+     */
+    static long parseCacheDuration(String cacheControl) {
+        if (cacheControl == null || cacheControl.isEmpty()) {
+            LOGGER.debug("No Cache-Control header found, using default cache duration: {} minutes", TimeUnit.MILLISECONDS.toMinutes(DEFAULT_CACHE_DURATION));
+            return DEFAULT_CACHE_DURATION;
+        }
+
+        try {
+            // Parse Cache-Control header for max-age directive
+            // Example: "public, max-age=3600" or "max-age=3600, public"
+            String[] directives = cacheControl.split(",");
+            for (String directive : directives) {
+                String trimmed = directive.trim();
+                if (trimmed.startsWith("max-age=")) {
+                    String maxAgeValue = trimmed.substring("max-age=".length()).trim();
+                    long maxAgeSeconds = Long.parseLong(maxAgeValue);
+                    long cacheDurationMs = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+                    LOGGER.info("Parsed Cache-Control max-age: {} seconds ({} minutes)", maxAgeSeconds, TimeUnit.SECONDS.toMinutes(maxAgeSeconds));
+                    return cacheDurationMs;
+                }
+            }
+            LOGGER.debug("No max-age directive found in Cache-Control header, using default cache duration");
+            return DEFAULT_CACHE_DURATION;
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Failed to parse max-age from Cache-Control header: {}. Using default cache duration", cacheControl, e);
+            return DEFAULT_CACHE_DURATION;
+        }
+    }
+
+    private record CachedKeys(JwksKeyStore keyStore, long refreshAt) {
+    }
+
+    /**
+     * Cache state of one JWKS endpoint.
+     */
+    private static final class Endpoint {
+        private final String url;
+        private final AtomicReference<CompletableFuture<CachedKeys>> inFlight = new AtomicReference<>();
+        private volatile CachedKeys current;
+        private volatile long retryNotBefore;
+        private volatile long lastFetchStartedAt;
+
+        private Endpoint(String url) {
+            this.url = url;
+        }
+    }
+
+    private static final class ThrottledException extends AccessTokenException {
+        private final long retryAfterMillis;
+
+        private ThrottledException(String url, int attempts, long retryAfterMillis) {
+            super("Rate limit exceeded by " + url + " after " + attempts + " attempts");
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+}
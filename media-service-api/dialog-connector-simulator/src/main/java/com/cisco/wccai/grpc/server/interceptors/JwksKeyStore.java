@@ -0,0 +1,104 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.SignedJWT;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The signing keys of one issuer, parsed once when the JWKS is fetched instead of on every validation.
+ *
+ * Each JWK becomes a ready {@link RSASSAVerifier} indexed by its {@code kid}, so a token is checked against
+ * exactly the key named in its JWS header. Only a token without a {@code kid} is tried against every key.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class JwksKeyStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwksKeyStore.class);
+
+    private final Map<String, JWSVerifier> verifiersByKid;
+    private final List<JWSVerifier> verifiers;
+    @Getter
+    private final long expirationAt;
+
+    private JwksKeyStore(Map<String, JWSVerifier> verifiersByKid, List<JWSVerifier> verifiers, long expirationAt) {
+        this.verifiersByKid = verifiersByKid;
+        this.verifiers = verifiers;
+        this.expirationAt = expirationAt;
+    }
+
+    /**
+     * Parses every key of a JWKS response. Keys that are not usable RSA keys are logged and left out.
+     *
+     * @param expirationAt epoch millis after which the keys must be fetched again
+     */
+    public static JwksKeyStore from(PublicKeyResponse publicKeyResponse, long expirationAt) {
+        Map<String, JWSVerifier> byKid = new HashMap<>();
+        List<JWSVerifier> all = new ArrayList<>();
+        List<PublicKeyResponse.Key> keys = publicKeyResponse.getKeys() == null ? List.of() : publicKeyResponse.getKeys();
+        for (PublicKeyResponse.Key key : keys) {
+            try {
+                JWK jwk = JWK.parse(key.toString());
+                if (!(jwk instanceof RSAKey rsaKey)) {
+                    // EC or OKP keys of the issuer are not used for our tokens; one of them must not fail the whole JWKS
+                    LOGGER.warn("Skipping {} JWK with kid {}: only RSA keys are supported", jwk.getKeyType(), key.getKid());
+                    continue;
+                }
+                JWSVerifier verifier = new RSASSAVerifier(rsaKey);
+                all.add(verifier);
+                if (key.getKid() != null) {
+                    byKid.put(key.getKid(), verifier);
+                }
+            } catch (ParseException | JOSEException | IllegalStateException | ClassCastException e) {
+                LOGGER.warn("Skipping unusable JWK with kid {}: {}", key.getKid(), e.getMessage());
+            }
+        }
+        return new JwksKeyStore(Collections.unmodifiableMap(byKid), Collections.unmodifiableList(all), expirationAt);
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expirationAt;
+    }
+
+    public boolean isEmpty() {
+        return verifiers.isEmpty();
+    }
+
+    public boolean containsKid(String kid) {
+        return verifiersByKid.containsKey(kid);
+    }
+
+    /**
+     * @return true if the token's signature verifies with the key named by its {@code kid}, or with any key
+     * when the header has no {@code kid}
+     */
+    public boolean verify(SignedJWT signedJWT) throws JOSEException {
+        String kid = signedJWT.getHeader().getKeyID();
+        if (kid != null) {
+            JWSVerifier verifier = verifiersByKid.get(kid);
+            if (verifier == null) {
+                LOGGER.error("No public key with kid {}", kid);
+                return false;
+            }
+            return signedJWT.verify(verifier);
+        }
+        for (JWSVerifier verifier : verifiers) {
+            if (signedJWT.verify(verifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
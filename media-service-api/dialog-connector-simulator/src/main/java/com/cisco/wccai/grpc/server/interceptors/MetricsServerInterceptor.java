@@ -0,0 +1,238 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.cisco.wcc.ccai.media.v1.ConversationAudioGrpc;
+import com.cisco.wcc.ccai.media.v1.VoiceVirtualAgentGrpc;
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.Histogram;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records per-method gRPC metrics: calls started and handled by status code, call duration, messages and bytes
+ * in each direction (in total and per stream), active calls and, for the audio streaming methods, frame
+ * inter-arrival time and jitter.
+ *
+ * Every series of a method is registered the first time the method is called. After that a message only costs
+ * a few {@link Counter} increments and {@link Histogram} records, which never allocate.
+ * Register it last, so it is the outermost interceptor and also sees calls rejected by the others.
+ */
+public class MetricsServerInterceptor implements ServerInterceptor {
+
+    public static final Set<String> AUDIO_STREAM_METHODS = Set.of(
+            VoiceVirtualAgentGrpc.getProcessCallerInputMethod().getFullMethodName(),
+            ConversationAudioGrpc.getStreamConversationAudioMethod().getFullMethodName());
+
+    private static final long[] MESSAGE_COUNT_BUCKETS = {1, 10, 100, 500, 1000, 3000, 10000, 30000, 100000};
+    private static final long[] BYTES_BUCKETS = {100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+    private static final long[] DURATION_MS_BUCKETS = {1, 5, 10, 50, 100, 500, 1000, 5000, 30000, 60000, 300000, 900000, 3600000};
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> serverCall, Metadata metadata,
+                                                                 ServerCallHandler<ReqT, RespT> serverCallHandler) {
+        MethodMetrics method = methodMetrics(serverCall.getMethodDescriptor());
+        CallMetrics<ReqT, RespT> call = new CallMetrics<>(serverCall, method);
+        ServerCall.Listener<ReqT> delegate;
+        try {
+            delegate = serverCallHandler.startCall(call, metadata);
+        } catch (RuntimeException e) {
+            // gRPC closes the transport stream itself, bypassing the forwarding call
+            call.finish(Status.fromThrowable(e).getCode());
+            throw e;
+        }
+        return new CallMetricsListener<>(delegate, call);
+    }
+
+    private MethodMetrics methodMetrics(MethodDescriptor<?, ?> descriptor) {
+        MethodMetrics method = methods.get(descriptor.getFullMethodName());
+        return method != null ? method : methods.computeIfAbsent(descriptor.getFullMethodName(), name -> new MethodMetrics(descriptor));
+    }
+
+    private static int serializedSize(Object message) {
+        return message instanceof MessageLite messageLite ? messageLite.getSerializedSize() : 0;
+    }
+
+    /**
+     * The series of one method, registered once and shared by all of its calls.
+     */
+    private static final class MethodMetrics {
+        private final Counter started;
+        private final Counter[] handled = new Counter[CODES.length];
+        private final Histogram duration;
+        private final Counter messagesReceived;
+        private final Counter messagesSent;
+        private final Counter bytesReceived;
+        private final Counter bytesSent;
+        private final Histogram streamMessagesReceived;
+        private final Histogram streamMessagesSent;
+        private final Histogram streamBytesReceived;
+        private final Histogram streamBytesSent;
+        private final AtomicInteger active = new AtomicInteger();
+        private final Histogram frameInterArrival;
+        private final Histogram frameJitter;
+
+        private MethodMetrics(MethodDescriptor<?, ?> descriptor) {
+            MetricsRegistry registry = MetricsRegistry.getInstance();
+            String service = String.valueOf(descriptor.getServiceName());
+            String method = String.valueOf(descriptor.getBareMethodName());
+            String type = descriptor.getType().name();
+
+            started = registry.counter("grpc_server_started_total", "Calls started",
+                    "grpc_service", service, "grpc_method", method, "grpc_type", type);
+            for (Status.Code code : CODES) {
+                handled[code.ordinal()] = registry.counter("grpc_server_handled_total", "Calls completed, by status code",
+                        "grpc_service", service, "grpc_method", method, "grpc_type", type, "grpc_code", code.name());
+            }
+            duration = registry.histogram("grpc_server_handling_ms", "Time from call start to close",
+                    DURATION_MS_BUCKETS, "grpc_service", service, "grpc_method", method);
+            messagesReceived = registry.counter("grpc_server_msg_received_total", "Request messages received",
+                    "grpc_service", service, "grpc_method", method);
+            messagesSent = registry.counter("grpc_server_msg_sent_total", "Response messages sent",
+                    "grpc_service", service, "grpc_method", method);
+            bytesReceived = registry.counter("grpc_server_bytes_received_total", "Serialized request bytes received",
+                    "grpc_service", service, "grpc_method", method);
+            bytesSent = registry.counter("grpc_server_bytes_sent_total", "Serialized response bytes sent",
+                    "grpc_service", service, "grpc_method", method);
+            streamMessagesReceived = registry.histogram("grpc_server_stream_msg_received", "Request messages per call",
+                    MESSAGE_COUNT_BUCKETS, "grpc_service", service, "grpc_method", method);
+            streamMessagesSent = registry.histogram("grpc_server_stream_msg_sent", "Response messages per call",
+                    MESSAGE_COUNT_BUCKETS, "grpc_service", service, "grpc_method", method);
+            streamBytesReceived = registry.histogram("grpc_server_stream_bytes_received", "Request bytes per call",
+                    BYTES_BUCKETS, "grpc_service", service, "grpc_method", method);
+            streamBytesSent = registry.histogram("grpc_server_stream_bytes_sent", "Response bytes per call",
+                    BYTES_BUCKETS, "grpc_service", service, "grpc_method", method);
+            registry.gauge("grpc_server_active_calls", "Calls currently open", active::get,
+                    "grpc_service", service, "grpc_method", method);
+
+            if (AUDIO_STREAM_METHODS.contains(descriptor.getFullMethodName())) {
+                frameInterArrival = registry.histogram("grpc_server_frame_interarrival_ms",
+                        "Time between consecutive audio frames of a stream", Histogram.latencyMillisBuckets(),
+                        "grpc_service", service, "grpc_method", method);
+                frameJitter = registry.histogram("grpc_server_frame_jitter_ms",
+                        "Change in inter-arrival time between consecutive audio frames (RFC 3550 style)",
+                        Histogram.latencyMillisBuckets(), "grpc_service", service, "grpc_method", method);
+            } else {
+                frameInterArrival = null;
+                frameJitter = null;
+            }
+        }
+    }
+
+    /**
+     * Per-call state. Inbound fields are only touched by the serialized listener callbacks and outbound fields by
+     * ServerCall methods, which gRPC already requires the application not to call concurrently.
+     */
+    private static final class CallMetrics<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        private final MethodMetrics method;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private long messagesIn;
+        private long bytesIn;
+        private long messagesOut;
+        private long bytesOut;
+        private long lastArrivalNanos;
+        private long lastInterArrivalNanos = -1;
+
+        private CallMetrics(ServerCall<ReqT, RespT> delegate, MethodMetrics method) {
+            super(delegate);
+            this.method = method;
+            method.started.increment();
+            method.active.incrementAndGet();
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            int size = serializedSize(message);
+            messagesOut++;
+            bytesOut += size;
+            method.messagesSent.increment();
+            method.bytesSent.add(size);
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            finish(status.getCode());
+            super.close(status, trailers);
+        }
+
+        private void received(Object message) {
+            int size = serializedSize(message);
+            messagesIn++;
+            bytesIn += size;
+            method.messagesReceived.increment();
+            method.bytesReceived.add(size);
+            if (method.frameInterArrival != null) {
+                long now = System.nanoTime();
+                if (lastArrivalNanos != 0) {
+                    long interArrival = now - lastArrivalNanos;
+                    method.frameInterArrival.record(TimeUnit.NANOSECONDS.toMillis(interArrival));
+                    if (lastInterArrivalNanos >= 0) {
+                        method.frameJitter.record(TimeUnit.NANOSECONDS.toMillis(Math.abs(interArrival - lastInterArrivalNanos)));
+                    }
+                    lastInterArrivalNanos = interArrival;
+                }
+                lastArrivalNanos = now;
+            }
+        }
+
+        private void finish(Status.Code code) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            method.active.decrementAndGet();
+            method.handled[code.ordinal()].increment();
+            method.duration.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            method.streamMessagesReceived.record(messagesIn);
+            method.streamMessagesSent.record(messagesOut);
+            method.streamBytesReceived.record(bytesIn);
+            method.streamBytesSent.record(bytesOut);
+        }
+    }
+
+    private static final class CallMetricsListener<ReqT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+        private final CallMetrics<ReqT, ?> call;
+
+        private CallMetricsListener(ServerCall.Listener<ReqT> delegate, CallMetrics<ReqT, ?> call) {
+            super(delegate);
+            this.call = call;
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            call.received(message);
+            super.onMessage(message);
+        }
+
+        @Override
+        public void onCancel() {
+            // cancelled by the client or deadline before the service closed the call
+            call.finish(Status.Code.CANCELLED);
+            super.onCancel();
+        }
+
+        @Override
+        public void onComplete() {
+            // close() normally recorded the status already; this only catches a call closed by the transport
+            call.finish(Status.Code.OK);
+            super.onComplete();
+        }
+    }
+}
@@ -14,7 +14,6 @@ public class PublicKeyResponse {
 
     @JsonProperty("keys")
     private List<Key> keys;
-    private Long expirationAt;
 
     @Getter
     @Setter
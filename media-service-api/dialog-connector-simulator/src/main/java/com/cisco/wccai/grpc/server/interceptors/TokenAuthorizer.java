@@ -0,0 +1,83 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.nimbusds.jwt.SignedJWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * The token check shared by the synchronous and asynchronous authorization interceptors: a
+ * {@link VerifiedTokenCache} lookup first, then a full JWT validation whose success is cached.
+ */
+public class TokenAuthorizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenAuthorizer.class);
+
+    private final VerifiedTokenCache verifiedTokens;
+    private final JWTAuthorizationHandler authorizationHandler;
+
+    public TokenAuthorizer() {
+        this(new VerifiedTokenCache());
+    }
+
+    public TokenAuthorizer(VerifiedTokenCache verifiedTokens) {
+        this(verifiedTokens, JWTAuthorizationHandler.getInstance());
+    }
+
+    public TokenAuthorizer(VerifiedTokenCache verifiedTokens, JWTAuthorizationHandler authorizationHandler) {
+        this.verifiedTokens = verifiedTokens;
+        this.authorizationHandler = authorizationHandler;
+    }
+
+    /**
+     * GRPC reflection and the Health service are open to everyone.
+     */
+    public static boolean requiresAuthorization(String fullMethodName) {
+        return !(fullMethodName.startsWith("grpc.reflection.v1alpha.ServerReflection") ||
+                fullMethodName.startsWith("grpc.reflection.v1.ServerReflection") ||
+                fullMethodName.startsWith("com.cisco.wcc.ccai.v1.Health"));
+    }
+
+    /**
+     * @return true if the token was validated before and has not expired, a lookup that never blocks
+     */
+    public boolean isVerified(String token) {
+        return verifiedTokens.isVerified(token);
+    }
+
+    /**
+     * Validates a token, from the cache when possible. A full validation may have to fetch the issuer's keys.
+     *
+     * @return true if the token is valid
+     * @throws AccessTokenException if the token is not a valid JWT
+     */
+    public boolean authorize(String token) throws AccessTokenException {
+        // A token that already passed full validation is trusted until it expires
+        if (verifiedTokens.isVerified(token)) {
+            return true;
+        }
+        // The token is parsed once, for both type detection and validation
+        SignedJWT signedJWT = AuthorizationHandlerFactory.parseJWT(token);
+        if (signedJWT == null) {
+            throw new AccessTokenException("Invalid authorization token");
+        }
+        boolean isAuthorized = authorizationHandler.validateToken(signedJWT);
+        if (isAuthorized) {
+            cacheVerifiedToken(token, signedJWT);
+        }
+        return isAuthorized;
+    }
+
+    private void cacheVerifiedToken(String token, SignedJWT signedJWT) {
+        try {
+            Date expirationTime = signedJWT.getJWTClaimsSet().getExpirationTime();
+            if (expirationTime != null) {
+                verifiedTokens.put(token, expirationTime.getTime());
+            }
+        } catch (ParseException e) {
+            LOGGER.warn("Not caching token without a readable expiry: {}", e.getMessage());
+        }
+    }
+}
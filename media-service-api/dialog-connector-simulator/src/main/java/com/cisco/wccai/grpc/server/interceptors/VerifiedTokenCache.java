@@ -0,0 +1,138 @@
+package com.cisco.wccai.grpc.server.interceptors;
+
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.cisco.wccai.grpc.utils.LoadProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers tokens that passed full validation until they expire, so a datasource token reused for thousands
+ * of calls pays for the RSA signature check once instead of on every call.
+ *
+ * Entries are keyed by the SHA-256 digest of the token, never the token itself, and live until the token's
+ * {@code exp}. The cache holds at most {@code maxEntries} tokens; when it is full, expired entries are dropped
+ * first and then the entry closest to expiry. Only successful validations are cached, so a rejected token is
+ * validated again every time.
+ */
+public class VerifiedTokenCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VerifiedTokenCache.class);
+    private static final MessageDigest SHA_256_PROTOTYPE = sha256();
+
+    private final int maxEntries;
+    private final Map<ByteBuffer, Long> expiryByDigest = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter expiredEvictions;
+    private final Counter sizeEvictions;
+
+    public VerifiedTokenCache() {
+        this(LoadProperties.getIntSetting("AUTH_TOKEN_CACHE_MAX_ENTRIES", 10000));
+    }
+
+    /**
+     * @param maxEntries tokens kept at most, 0 disables the cache
+     */
+    public VerifiedTokenCache(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        hits = registry.counter("auth_token_cache_requests_total", "Verified-token cache lookups", "result", "hit");
+        misses = registry.counter("auth_token_cache_requests_total", "Verified-token cache lookups", "result", "miss");
+        expiredEvictions = registry.counter("auth_token_cache_evictions_total", "Tokens removed from the verified-token cache",
+                "reason", "expired");
+        sizeEvictions = registry.counter("auth_token_cache_evictions_total", "Tokens removed from the verified-token cache",
+                "reason", "size");
+        registry.gauge("auth_token_cache_size", "Tokens currently in the verified-token cache", expiryByDigest::size);
+        registry.gauge("auth_token_cache_hit_ratio", "Share of verified-token cache lookups that were hits", this::getHitRatio);
+        LOGGER.info("Verified-token cache {}", this.maxEntries == 0 ? "disabled" : "holds up to " + this.maxEntries + " tokens");
+    }
+
+    /**
+     * @return true if the token was validated before and has not expired yet
+     */
+    public boolean isVerified(String token) {
+        if (maxEntries == 0 || token == null || token.isEmpty()) {
+            return false;
+        }
+        ByteBuffer digest = digest(token);
+        Long expiresAt = expiryByDigest.get(digest);
+        if (expiresAt != null && System.currentTimeMillis() < expiresAt) {
+            hits.increment();
+            return true;
+        }
+        if (expiresAt != null && expiryByDigest.remove(digest, expiresAt)) {
+            expiredEvictions.increment();
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Records a token that just passed validation.
+     *
+     * @param expiresAtMillis the token's {@code exp} claim in epoch milliseconds
+     */
+    public void put(String token, long expiresAtMillis) {
+        if (maxEntries == 0 || token == null || token.isEmpty() || expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        if (expiryByDigest.size() >= maxEntries) {
+            makeRoom();
+        }
+        expiryByDigest.put(digest(token), expiresAtMillis);
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    // Only runs when the cache is full, which takes a flood of distinct valid tokens, each paying a full validation.
+    private void makeRoom() {
+        long now = System.currentTimeMillis();
+        ByteBuffer soonest = null;
+        long soonestExpiry = Long.MAX_VALUE;
+        Iterator<Map.Entry<ByteBuffer, Long>> iterator = expiryByDigest.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ByteBuffer, Long> entry = iterator.next();
+            if (entry.getValue() <= now) {
+                iterator.remove();
+                expiredEvictions.increment();
+            } else if (entry.getValue() < soonestExpiry) {
+                soonest = entry.getKey();
+                soonestExpiry = entry.getValue();
+            }
+        }
+        if (expiryByDigest.size() >= maxEntries && soonest != null && expiryByDigest.remove(soonest, soonestExpiry)) {
+            sizeEvictions.increment();
+        }
+    }
+
+    private static ByteBuffer digest(String token) {
+        try {
+            MessageDigest messageDigest = (MessageDigest) SHA_256_PROTOTYPE.clone();
+            return ByteBuffer.wrap(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (CloneNotSupportedException e) {
+            return ByteBuffer.wrap(sha256().digest(token.getBytes(StandardCharsets.US_ASCII)));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
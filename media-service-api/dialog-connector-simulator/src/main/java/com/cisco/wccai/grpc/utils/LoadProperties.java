@@ -11,6 +11,7 @@ import java.util.Properties;
 public class LoadProperties {
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadProperties.class);
     private static final Properties prop = new Properties();
+    private static final Properties CONFIG = loadProperties();
 
     LoadProperties()
     {
@@ -37,4 +38,65 @@ public class LoadProperties {
         return prop;
     }
 
+    /**
+     * Resolves a setting the same way GrpcServer resolves PORT: the environment variable wins,
+     * then config.properties, then the supplied default.
+     *
+     * @param key          the environment variable / property name
+     * @param defaultValue the value used when neither source defines the key
+     * @return the trimmed configured value or the default
+     */
+    public static String getSetting(String key, String defaultValue) {
+        String value = System.getenv(key);
+        if (value == null || value.isEmpty()) {
+            value = CONFIG.getProperty(key);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public static int getIntSetting(String key, int defaultValue) {
+        String value = getSetting(key, null);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid integer value '{}' for {}, using default {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLongSetting(String key, long defaultValue) {
+        String value = getSetting(key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid long value '{}' for {}, using default {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static double getDoubleSetting(String key, double defaultValue) {
+        String value = getSetting(key, null);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid decimal value '{}' for {}, using default {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBooleanSetting(String key, boolean defaultValue) {
+        String value = getSetting(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static <E extends Enum<E>> E getEnumSetting(String key, Class<E> type, E defaultValue) {
+        String value = getSetting(key, null);
+        try {
+            return value == null ? defaultValue : Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid value '{}' for {}, using default {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
 }
@@ -0,0 +1,152 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding;
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.ParticipantRole;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConversationAnalyticsTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int FRAME_MILLIS = 20;
+    private static final int FRAME_SAMPLES = SAMPLE_RATE * FRAME_MILLIS / 1000;
+    private static final int HANGOVER_MILLIS = 200;
+    private static final SpeechAnalytics SETTINGS =
+            SpeechAnalytics.of(SpeechAnalytics.Output.OBJECT, FRAME_MILLIS, -40, HANGOVER_MILLIS);
+    private static final WavFormat MULAW = WavFormat.of(AudioEncoding.MULAW, SAMPLE_RATE, 1);
+    private static final WavFormat LINEAR16 = WavFormat.of(AudioEncoding.LINEAR16, SAMPLE_RATE, 1);
+
+    @Test
+    public void mulawSilence() throws IOException {
+        ConversationAnalytics analytics = SETTINGS.newConversation("conversation", MULAW);
+        // Both u-law zero codes
+        for (int frame = 0; frame < 50; frame++) {
+            analytics.accept("caller", ParticipantRole.CALLER, mulawFrame(frame % 2 == 0 ? 0xFF : 0x7F));
+        }
+
+        JsonNode summary = toJson(analytics);
+        assertEquals(1000, summary.get("durationMillis").asLong());
+        assertEquals(0, summary.get("talkMillis").asLong());
+        assertEquals(1000, summary.get("silenceMillis").asLong());
+        JsonNode caller = summary.get("roles").get("caller");
+        assertEquals("CALLER", caller.get("participantRole").asText());
+        assertEquals(1000, caller.get("durationMillis").asLong());
+        assertEquals(1.0, caller.get("silenceRatio").asDouble(), 0);
+        assertEquals(0, caller.get("talkSpurts").asLong());
+        assertEquals(-100, caller.get("rmsDbfs").asDouble(), 0);
+        assertEquals(-100, caller.get("peakDbfs").asDouble(), 0);
+    }
+
+    @Test
+    public void mulawTone() throws IOException {
+        ConversationAnalytics analytics = SETTINGS.newConversation("conversation", MULAW);
+        // Alternating the loudest positive and negative codes, +-32124
+        byte[] frame = new byte[FRAME_SAMPLES];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (i % 2 == 0 ? 0x80 : 0x00);
+        }
+        for (int i = 0; i < 50; i++) {
+            analytics.accept("caller", ParticipantRole.CALLER, ByteString.copyFrom(frame));
+        }
+
+        JsonNode summary = toJson(analytics);
+        assertEquals(1000, summary.get("talkMillis").asLong());
+        JsonNode caller = summary.get("roles").get("caller");
+        assertEquals(0.0, caller.get("silenceRatio").asDouble(), 0);
+        assertEquals(1, caller.get("talkSpurts").asLong());
+        assertEquals(-0.2, caller.get("rmsDbfs").asDouble(), 0.001);
+        assertEquals(-0.2, caller.get("peakDbfs").asDouble(), 0.001);
+        assertEquals(-0.2, caller.get("meanSpeechDbfs").asDouble(), 0.001);
+    }
+
+    @Test
+    public void linear16Silence() throws IOException {
+        ConversationAnalytics analytics = SETTINGS.newConversation("conversation", LINEAR16);
+        for (int frame = 0; frame < 50; frame++) {
+            analytics.accept("agent", ParticipantRole.AGENT, linear16Frame(0));
+        }
+
+        JsonNode summary = toJson(analytics);
+        assertEquals(1000, summary.get("durationMillis").asLong());
+        assertEquals(0, summary.get("talkMillis").asLong());
+        JsonNode agent = summary.get("roles").get("agent");
+        assertEquals(1000, agent.get("durationMillis").asLong());
+        assertEquals(1.0, agent.get("silenceRatio").asDouble(), 0);
+        assertEquals(-100, agent.get("rmsDbfs").asDouble(), 0);
+        assertEquals(-100, agent.get("meanSpeechDbfs").asDouble(), 0);
+    }
+
+    @Test
+    public void linear16Tone() throws IOException {
+        ConversationAnalytics analytics = SETTINGS.newConversation("conversation", LINEAR16);
+        // A half-scale 1 kHz sine, split unevenly so a sample straddles two chunks
+        ByteString audio = ByteString.EMPTY;
+        for (int frame = 0; frame < 50; frame++) {
+            audio = audio.concat(linear16Frame(16384));
+        }
+        analytics.accept("agent", ParticipantRole.AGENT, audio.substring(0, 1001));
+        analytics.accept("agent", ParticipantRole.AGENT, audio.substring(1001));
+
+        JsonNode summary = toJson(analytics);
+        assertEquals(1000, summary.get("durationMillis").asLong());
+        assertEquals(1000, summary.get("talkMillis").asLong());
+        JsonNode agent = summary.get("roles").get("agent");
+        assertEquals(1000, agent.get("durationMillis").asLong());
+        assertEquals(1, agent.get("talkSpurts").asLong());
+        // 20 log10(0.5 / sqrt(2))
+        assertEquals(-9.0, agent.get("rmsDbfs").asDouble(), 0.001);
+        assertEquals(-9.0, agent.get("peakDbfs").asDouble(), 0.001);
+    }
+
+    @Test
+    public void countsOvertalkOfTwoRoles() throws IOException {
+        ConversationAnalytics analytics = SETTINGS.newConversation("conversation", LINEAR16);
+        // The caller talks for the first second, the agent from 0.5 s to 1.5 s; both send two seconds
+        for (int frame = 0; frame < 100; frame++) {
+            analytics.accept("caller", ParticipantRole.CALLER, linear16Frame(frame < 50 ? 16384 : 0));
+            analytics.accept("agent", ParticipantRole.AGENT, linear16Frame(frame >= 25 && frame < 75 ? 16384 : 0));
+        }
+
+        JsonNode summary = toJson(analytics);
+        assertEquals(2000, summary.get("durationMillis").asLong());
+        // Each role's talk runs on for the hangover: caller 0-1.2 s, agent 0.5-1.7 s
+        assertEquals(1700, summary.get("talkMillis").asLong());
+        assertEquals(300, summary.get("silenceMillis").asLong());
+        assertEquals(700, summary.get("overtalkMillis").asLong());
+        assertEquals(1, summary.get("overtalkEvents").asLong());
+        JsonNode roles = summary.get("roles");
+        assertEquals(1000 + HANGOVER_MILLIS, roles.get("caller").get("talkMillis").asLong());
+        assertEquals(1000 + HANGOVER_MILLIS, roles.get("agent").get("talkMillis").asLong());
+        assertEquals(1, roles.get("agent").get("talkSpurts").asLong());
+    }
+
+    private static ByteString mulawFrame(int code) {
+        byte[] frame = new byte[FRAME_SAMPLES];
+        Arrays.fill(frame, (byte) code);
+        return ByteString.copyFrom(frame);
+    }
+
+    /**
+     * @return a frame of a 1 kHz sine of the amplitude, little-endian
+     */
+    private static ByteString linear16Frame(int amplitude) {
+        byte[] frame = new byte[2 * FRAME_SAMPLES];
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            int sample = (int) Math.round(amplitude * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+            frame[2 * i] = (byte) sample;
+            frame[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return ByteString.copyFrom(frame);
+    }
+
+    private static JsonNode toJson(ConversationAnalytics analytics) throws IOException {
+        return new ObjectMapper().readTree(analytics.toJson());
+    }
+}
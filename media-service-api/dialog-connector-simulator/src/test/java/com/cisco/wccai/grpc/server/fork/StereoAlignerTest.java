@@ -0,0 +1,154 @@
+package com.cisco.wccai.grpc.server.fork;
+
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.AudioEncoding;
+import com.cisco.wcc.ccai.media.v1.MediaServiceCommon.ParticipantRole;
+import com.cisco.wccai.grpc.metrics.Counter;
+import com.cisco.wccai.grpc.metrics.MetricsRegistry;
+import com.google.protobuf.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StereoAlignerTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int JITTER_MILLIS = 200;
+    private static final int FRAME_MILLIS = 20;
+    private static final int FRAME_SAMPLES = SAMPLE_RATE * FRAME_MILLIS / 1000;
+    private static final long FRAME_NANOS = FRAME_MILLIS * 1_000_000L;
+    private static final long START_NANOS = 1_700_000_000_000_000_000L;
+    private static final byte SILENCE = (byte) 0xFF;
+    private static final byte CALLER_AUDIO = 0x10;
+    private static final byte AGENT_AUDIO = 0x20;
+
+    private StereoAligner aligner;
+    private int left;
+    private int right;
+
+    @Before
+    public void setUp() {
+        RoleAudioBuffers buffers = RoleAudioBuffers.of(RoleAudioBuffers.BufferMode.MEMORY,
+                Path.of(System.getProperty("java.io.tmpdir")), 65536);
+        aligner = new StereoAligner(WavFormat.of(AudioEncoding.MULAW, SAMPLE_RATE, 1), JITTER_MILLIS, buffers);
+        // Joining in the other order still puts the caller left
+        right = aligner.channelOf("agent", ParticipantRole.AGENT);
+        left = aligner.channelOf("caller", ParticipantRole.CALLER);
+    }
+
+    @After
+    public void tearDown() {
+        aligner.close();
+    }
+
+    @Test
+    public void interleavesInOrderFrames() throws IOException {
+        assertEquals(0, left);
+        assertEquals(1, right);
+        assertEquals(-1, aligner.channelOf("supervisor", ParticipantRole.ROLE_UNSPECIFIED));
+        for (int frame = 0; frame < 20; frame++) {
+            aligner.append(left, timestampOf(frame), frameOf(CALLER_AUDIO));
+            aligner.append(right, timestampOf(frame), frameOf(AGENT_AUDIO));
+        }
+
+        byte[] audio = drain();
+        assertEquals(2, aligner.getFormat().channels());
+        assertEquals(2 * 20 * FRAME_SAMPLES, audio.length);
+        assertChannel(audio, 0, 0, 20 * FRAME_SAMPLES, CALLER_AUDIO);
+        assertChannel(audio, 1, 0, 20 * FRAME_SAMPLES, AGENT_AUDIO);
+    }
+
+    @Test
+    public void fillsMissingFramesWithSilence() throws IOException {
+        for (int frame = 0; frame < 10; frame++) {
+            if (frame != 4) {
+                aligner.append(left, timestampOf(frame), frameOf(CALLER_AUDIO));
+            }
+        }
+
+        byte[] audio = drain();
+        assertEquals(2 * 10 * FRAME_SAMPLES, audio.length);
+        assertChannel(audio, 0, 0, 4 * FRAME_SAMPLES, CALLER_AUDIO);
+        assertChannel(audio, 0, 4 * FRAME_SAMPLES, 5 * FRAME_SAMPLES, SILENCE);
+        assertChannel(audio, 0, 5 * FRAME_SAMPLES, 10 * FRAME_SAMPLES, CALLER_AUDIO);
+        // A leg that never sent is silent throughout
+        assertChannel(audio, 1, 0, 10 * FRAME_SAMPLES, SILENCE);
+    }
+
+    @Test
+    public void placesFramesWithinTheJitterDelayAndDropsLaterOnes() throws IOException {
+        Counter lateBytes = MetricsRegistry.getInstance().counter("fork_stereo_late_bytes_total", "");
+        long lateBefore = lateBytes.get();
+        for (int frame = 0; frame < 20; frame++) {
+            if (frame != 2 && frame != 15) {
+                aligner.append(left, timestampOf(frame), frameOf(CALLER_AUDIO));
+            }
+        }
+        // 100 ms late, within the 200 ms jitter delay
+        aligner.append(left, timestampOf(15), frameOf(CALLER_AUDIO));
+        // 340 ms late, after its position was written
+        aligner.append(left, timestampOf(2), frameOf(CALLER_AUDIO));
+
+        byte[] audio = drain();
+        assertEquals(2 * 20 * FRAME_SAMPLES, audio.length);
+        assertChannel(audio, 0, 0, 2 * FRAME_SAMPLES, CALLER_AUDIO);
+        assertChannel(audio, 0, 2 * FRAME_SAMPLES, 3 * FRAME_SAMPLES, SILENCE);
+        assertChannel(audio, 0, 3 * FRAME_SAMPLES, 20 * FRAME_SAMPLES, CALLER_AUDIO);
+        assertEquals(FRAME_SAMPLES, lateBytes.get() - lateBefore);
+    }
+
+    @Test
+    public void reanchorsOnClockJump() throws IOException {
+        for (int frame = 0; frame < 5; frame++) {
+            aligner.append(left, timestampOf(frame), frameOf(CALLER_AUDIO));
+        }
+        // An hour ahead: continues the channel rather than opening an hour of silence
+        long jumped = START_NANOS + 3600 * 1_000_000_000L;
+        aligner.append(left, jumped, frameOf(CALLER_AUDIO));
+        aligner.append(left, jumped + FRAME_NANOS, frameOf(CALLER_AUDIO));
+        // Later timestamps are relative to the jump, so a gap after it is still kept
+        aligner.append(left, jumped + 3 * FRAME_NANOS, frameOf(CALLER_AUDIO));
+
+        byte[] audio = drain();
+        assertEquals(2 * 9 * FRAME_SAMPLES, audio.length);
+        assertChannel(audio, 0, 0, 7 * FRAME_SAMPLES, CALLER_AUDIO);
+        assertChannel(audio, 0, 7 * FRAME_SAMPLES, 8 * FRAME_SAMPLES, SILENCE);
+        assertChannel(audio, 0, 8 * FRAME_SAMPLES, 9 * FRAME_SAMPLES, CALLER_AUDIO);
+    }
+
+    private static long timestampOf(int frame) {
+        return START_NANOS + frame * FRAME_NANOS;
+    }
+
+    private static ByteString frameOf(byte value) {
+        byte[] frame = new byte[FRAME_SAMPLES];
+        Arrays.fill(frame, value);
+        return ByteString.copyFrom(frame);
+    }
+
+    private byte[] drain() throws IOException {
+        RoleAudioBuffer recording = aligner.drain();
+        assertNull(aligner.takeRecording());
+        try (recording) {
+            recording.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            recording.writeTo(Channels.newChannel(out));
+            byte[] wav = out.toByteArray();
+            return Arrays.copyOfRange(wav, WavFormat.HEADER_BYTES, wav.length);
+        }
+    }
+
+    private static void assertChannel(byte[] audio, int channel, int fromSample, int toSample, byte expected) {
+        for (int sample = fromSample; sample < toSample; sample++) {
+            assertEquals("channel " + channel + " sample " + sample, expected, audio[2 * sample + channel]);
+        }
+    }
+}